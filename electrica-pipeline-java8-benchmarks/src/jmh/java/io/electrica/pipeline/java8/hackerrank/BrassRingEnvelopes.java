@@ -0,0 +1,68 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.hackerrank.dto.CandidateDto;
+import io.electrica.pipeline.java8.hackerrank.dto.RequisitionDto;
+
+import java.util.UUID;
+
+/**
+ * Synthetic BrassRing envelopes for benchmarks.
+ */
+public final class BrassRingEnvelopes {
+
+    private static final String FILLER_ROOT_ELEMENT_NAME = "ATTACHMENT";
+
+    private BrassRingEnvelopes() {
+    }
+
+    /**
+     * Envelope with requisition and candidate packets only.
+     */
+    public static String small() {
+        return envelope(0, 0);
+    }
+
+    /**
+     * Envelope with requisition and candidate packets followed by specified number of filler packets.
+     */
+    static String large(int fillerPackets, int fillerPayloadSize) {
+        return envelope(fillerPackets, fillerPayloadSize);
+    }
+
+    private static String envelope(int fillerPackets, int fillerPayloadSize) {
+        StringBuilder sb = new StringBuilder()
+                .append("<Envelope version=\"01.00\">")
+                .append("<Sender><Id>12345</Id><Credential>25</Credential></Sender>")
+                .append("<TransactInfo transactType=\"data\">")
+                .append("<TransactId>").append(UUID.randomUUID()).append("</TransactId>")
+                .append("<TimeStamp>2018-12-01T10:00:00</TimeStamp>")
+                .append("</TransactInfo>");
+
+        int packetId = 1;
+        appendPacket(sb, packetId++, "<" + RequisitionDto.ROOT_ELEMENT_NAME + "/>");
+        appendPacket(sb, packetId++, "<" + CandidateDto.ROOT_ELEMENT_NAME + "/>");
+
+        StringBuilder filler = new StringBuilder(fillerPayloadSize + 32)
+                .append('<').append(FILLER_ROOT_ELEMENT_NAME).append('>');
+        for (int i = 0; i < fillerPayloadSize; i++) {
+            filler.append((char) ('A' + i % 26));
+        }
+        filler.append("</").append(FILLER_ROOT_ELEMENT_NAME).append('>');
+        for (int i = 0; i < fillerPackets; i++) {
+            appendPacket(sb, packetId++, filler.toString());
+        }
+
+        return sb.append("</Envelope>").toString();
+    }
+
+    private static void appendPacket(StringBuilder sb, int packetId, String payload) {
+        sb.append("<Packet>")
+                .append("<PacketInfo packetType=\"data\">")
+                .append("<PacketId>").append(packetId).append("</PacketId>")
+                .append("<Action>SET</Action>")
+                .append("<Manifest>manifest</Manifest>")
+                .append("</PacketInfo>")
+                .append("<Payload><![CDATA[").append(payload).append("]]></Payload>")
+                .append("</Packet>");
+    }
+}
@@ -0,0 +1,103 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import io.electrica.connector.brassring.application.v1.model.Envelope;
+import io.electrica.connector.brassring.application.v1.model.Status;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.pipeline.java8.spi.MessageDispatcher;
+import io.electrica.sdk.java8.api.http.Message;
+import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Hot paths of BrassRing candidate export message handling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CandidateExportMessageListenerBenchmark {
+
+    private static final int FILLER_PAYLOAD_SIZE = 4 * 1024;
+
+    /**
+     * Number of filler packets in envelope, zero means small envelope with requisition and candidate only.
+     */
+    @Param({"0", "50"})
+    public int fillerPackets;
+
+    private CandidateExportMessageListener listener;
+    private MessageDispatcher dispatcher;
+    private Message message;
+    private Message foreignMessage;
+    private Envelope request;
+    private Status status;
+    private ObjectWriter envelopeWriter;
+
+    @Setup
+    public void setUp() throws Exception {
+        CandidateExporter exporter = new CandidateExporter(
+                mock(HackerRankV3Candidates.class),
+                LambdaMetrics.NOOP,
+                // export in calling thread
+                Runnable::run,
+                CandidateExporter.newLimiter(LambdaMetrics.NOOP)
+        );
+        // zero sized cache, so every invocation does full processing
+        IdempotencyCache idempotencyCache = new IdempotencyCache(0, 1, null);
+        listener = new CandidateExportMessageListener(exporter, null, idempotencyCache, null, null);
+        dispatcher = new MessageDispatcher();
+        dispatcher.register(
+                CandidateExportMessageListener.MESSAGE_TAG_KEY,
+                CandidateExportMessageListener.MESSAGE_TAG,
+                listener
+        );
+
+        String payload = fillerPackets == 0 ?
+                BrassRingEnvelopes.small() :
+                BrassRingEnvelopes.large(fillerPackets, FILLER_PAYLOAD_SIZE);
+        message = mockMessage(CandidateExportMessageListener.MESSAGE_TAG, payload);
+        foreignMessage = mockMessage("Foreign", payload);
+
+        XmlMapper mapper = new XmlMapper();
+        ObjectReader envelopeReader = mapper.readerFor(Envelope.class);
+        envelopeWriter = mapper.writerFor(Envelope.class);
+        request = envelopeReader.readValue(payload);
+        status = CandidateExportMessageListener.createStatus("200", "Exported", "Exported");
+    }
+
+    private static Message mockMessage(String tag, String payload) {
+        Message message = mock(Message.class);
+        when(message.getPayload()).thenReturn(payload);
+        when(message.getPropertiesMap()).thenReturn(Collections.singletonMap("tag", tag));
+        return message;
+    }
+
+    @Benchmark
+    public String onMessage() {
+        return listener.onMessage(message);
+    }
+
+    @Benchmark
+    public String createResponseEnvelope() throws Exception {
+        Envelope response = CandidateExportMessageListener.createResponseEnvelope(request, status);
+        return envelopeWriter.writeValueAsString(response);
+    }
+
+    @Benchmark
+    public boolean dispatcherMatch() {
+        return dispatcher.accepts(message);
+    }
+
+    @Benchmark
+    public boolean dispatcherMismatch() {
+        return dispatcher.accepts(foreignMessage);
+    }
+}
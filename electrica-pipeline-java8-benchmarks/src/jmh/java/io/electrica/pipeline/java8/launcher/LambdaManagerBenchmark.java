@@ -0,0 +1,91 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.BackgroundProcessLambda;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.pipeline.java8.spi.LambdaParameters;
+import io.electrica.pipeline.java8.spi.Sharding;
+import io.electrica.pipeline.java8.spi.ThreadFactoryProvider;
+import io.electrica.sdk.java8.api.Electrica;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Lambda lifecycle cost of {@link LambdaManager} against stub Electrica instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LambdaManagerBenchmark {
+
+    @Param({"1", "4"})
+    public int concurrency;
+
+    @Param({PlatformThreadFactoryProvider.NAME})
+    public String threads;
+
+    private ScheduledExecutorService scheduler;
+    private LambdaManager manager;
+
+    @Setup
+    public void setUp() {
+        Electrica electrica = mock(Electrica.class);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        manager = new LambdaManager(
+                new LambdaDescriptor(NoopLambda.NAME, NoopLambda.class),
+                false,
+                concurrency,
+                new DefaultLambdaContext(
+                        LambdaMetrics.NOOP,
+                        scheduler,
+                        threadFactoryProvider(),
+                        null,
+                        LambdaParameters.EMPTY,
+                        new HeapUsageMonitor(),
+                        Sharding.SINGLE,
+                        new ChannelRegistry(1),
+                        new DispatcherRegistry()
+                ),
+                name -> electrica
+        );
+    }
+
+    private ThreadFactoryProvider threadFactoryProvider() {
+        ThreadFactoryProvider provider = VirtualThreadFactoryProvider.NAME.equals(threads) ?
+                new VirtualThreadFactoryProvider() :
+                new PlatformThreadFactoryProvider();
+        if (!provider.isAvailable()) {
+            throw new IllegalStateException("Threads aren't supported by current JVM: " + threads);
+        }
+        return provider;
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        manager.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void startStopLambda() throws Exception {
+        manager.startLambda();
+        manager.stopLambda();
+    }
+
+    /**
+     * Lambda that does nothing but awaits stop signal.
+     */
+    public static class NoopLambda extends BackgroundProcessLambda {
+
+        static final String NAME = "Noop";
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+    }
+}
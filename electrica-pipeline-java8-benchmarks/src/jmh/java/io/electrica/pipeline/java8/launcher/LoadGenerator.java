@@ -0,0 +1,242 @@
+package io.electrica.pipeline.java8.launcher;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.electrica.pipeline.java8.hackerrank.BrassRingEnvelopes;
+import io.electrica.sdk.java8.api.http.Message;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * End-to-end load test of real {@link PipelineLauncher} run against {@link LocalElectrica} stand-in.
+ * <p>
+ * BrassRing envelopes, recorded or synthetic, are delivered to registered message listeners at fixed rate by
+ * several senders. Latency is measured from planned send time, so stalls of pipeline aren't hidden by delayed
+ * sends. Options after {@code --} are passed to launcher.
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final String LAUNCHER_ARGS_SEPARATOR = "--";
+    private static final String[] DEFAULT_LAUNCHER_ARGS = {"-k", "local", "-s", "*"};
+    private static final long AWAIT_LISTENERS_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    private static final long AWAIT_LISTENERS_INTERVAL = 100;
+
+    private static final ThreadLocal<String> CURRENT_PAYLOAD = new ThreadLocal<>();
+
+    public static void main(String[] args) throws Exception {
+        int separator = Arrays.asList(args).indexOf(LAUNCHER_ARGS_SEPARATOR);
+        String[] generatorArgs = separator < 0 ? args : Arrays.copyOfRange(args, 0, separator);
+        String[] launcherArgs = separator < 0 ?
+                DEFAULT_LAUNCHER_ARGS :
+                Arrays.copyOfRange(args, separator + 1, args.length);
+
+        Config config = new Config();
+        JCommander jCommander = JCommander.newBuilder()
+                .programName(LoadGenerator.class.getSimpleName())
+                .addObject(config)
+                .build();
+        try {
+            jCommander.parse(generatorArgs);
+        } catch (ParameterException e) {
+            System.err.println(e.getMessage());
+            System.exit(-1);
+        }
+        if (config.isHelp()) {
+            jCommander.usage();
+            return;
+        }
+        checkArgument(config.getRate() > 0, "Rate should be positive: %s", config.getRate());
+        checkArgument(config.getConcurrency() > 0, "Concurrency should be positive: %s", config.getConcurrency());
+
+        LocalElectrica electrica = new LocalElectrica(config.getLatency(), config.getErrorRate());
+        Thread launcher = new Thread(() -> {
+            try {
+                PipelineLauncher.run(launcherArgs, electrica::instance);
+            } catch (Exception e) {
+                log.error("Launcher failed", e);
+            }
+        }, "launcher");
+        launcher.setDaemon(true);
+        launcher.start();
+
+        long deadline = System.currentTimeMillis() + AWAIT_LISTENERS_TIMEOUT;
+        while (!electrica.hasListeners()) {
+            if (System.currentTimeMillis() > deadline) {
+                log.error(
+                        "No message listeners registered, check launcher options: {}",
+                        Arrays.toString(launcherArgs)
+                );
+                System.exit(-1);
+            }
+            Thread.sleep(AWAIT_LISTENERS_INTERVAL);
+        }
+
+        Report report = generate(config, electrica, payloadSupplier(config.getEnvelopesDir()));
+        JCommander.getConsole().println(report.toString());
+        // graceful launcher stop by shutdown hook
+        System.exit(0);
+    }
+
+    private static Supplier<String> payloadSupplier(@Nullable String envelopesDir) throws IOException {
+        if (envelopesDir == null) {
+            return BrassRingEnvelopes::small;
+        }
+        List<String> payloads = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(envelopesDir), "*.xml")) {
+            for (Path path : stream) {
+                payloads.add(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+            }
+        }
+        if (payloads.isEmpty()) {
+            throw new IllegalArgumentException("No recorded envelopes found in: " + envelopesDir);
+        }
+        AtomicLong index = new AtomicLong();
+        return () -> payloads.get((int) (index.getAndIncrement() % payloads.size()));
+    }
+
+    private static Report generate(
+            Config config,
+            LocalElectrica electrica,
+            Supplier<String> payloads
+    ) throws InterruptedException {
+        // single message instance, payload of current delivery is bound to sender thread
+        Message message = mock(Message.class);
+        when(message.getPayload()).thenAnswer(invocation -> CURRENT_PAYLOAD.get());
+        when(message.getPropertiesMap()).thenReturn(Collections.singletonMap("tag", config.getTag()));
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        long start = System.nanoTime() + intervalNanos;
+        long measureStart = start + TimeUnit.SECONDS.toNanos(config.getWarmup());
+        long end = measureStart + TimeUnit.SECONDS.toNanos(config.getDuration());
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder delivered = new LongAdder();
+        LongAdder undelivered = new LongAdder();
+        LongAdder failed = new LongAdder();
+        AtomicLong sequence = new AtomicLong();
+
+        ExecutorService senders = Executors.newFixedThreadPool(config.getConcurrency(), new ThreadFactoryBuilder()
+                .setNameFormat("sender-%d")
+                .setDaemon(true)
+                .build()
+        );
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            senders.execute(() -> {
+                long planned;
+                while ((planned = start + sequence.getAndIncrement() * intervalNanos) < end) {
+                    long now;
+                    while ((now = System.nanoTime()) < planned) {
+                        LockSupport.parkNanos(planned - now);
+                    }
+                    CURRENT_PAYLOAD.set(payloads.get());
+                    boolean measured = planned >= measureStart;
+                    try {
+                        if (electrica.deliver(message)) {
+                            if (measured) {
+                                latency.record(System.nanoTime() - planned);
+                                delivered.increment();
+                            }
+                        } else if (measured) {
+                            undelivered.increment();
+                        }
+                    } catch (Exception e) {
+                        if (measured) {
+                            failed.increment();
+                        }
+                        log.debug("Message delivery failed", e);
+                    }
+                }
+            });
+        }
+        senders.shutdown();
+        senders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long measuredNanos = Math.max(System.nanoTime() - measureStart, 1);
+        return new Report(delivered.sum(), undelivered.sum(), failed.sum(), measuredNanos, latency.snapshot());
+    }
+
+    @AllArgsConstructor
+    private static class Report {
+        private final long delivered;
+        private final long undelivered;
+        private final long failed;
+        private final long durationNanos;
+        private final LatencyHistogram.Snapshot latency;
+
+        @Override
+        public String toString() {
+            double seconds = durationNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            return String.format(
+                    "delivered=%d undelivered=%d failed=%d throughput=%.1f/s " +
+                            "latency(us) p50=%d p90=%d p99=%d p999=%d max=%d",
+                    delivered, undelivered, failed, delivered / seconds,
+                    toMicros(latency.valueAt(50)),
+                    toMicros(latency.valueAt(90)),
+                    toMicros(latency.valueAt(99)),
+                    toMicros(latency.valueAt(99.9)),
+                    toMicros(latency.max())
+            );
+        }
+
+        private static long toMicros(long nanos) {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+
+    @Getter
+    private static class Config {
+
+        @Parameter(names = {"-r", "--rate"}, description = "Messages per second.")
+        private int rate = 100;
+
+        @Parameter(names = {"-c", "--concurrency"}, description = "Number of concurrent senders.")
+        private int concurrency = 4;
+
+        @Parameter(names = {"-d", "--duration"}, description = "Measurement duration in seconds.")
+        private long duration = 60;
+
+        @Parameter(names = {"-w", "--warmup"}, description = "Warmup duration in seconds, not measured.")
+        private long warmup = 10;
+
+        @Parameter(names = {"-l", "--latency"}, description = "Simulated connector call latency in milliseconds.")
+        private long latency = 50;
+
+        @Parameter(names = {"-e", "--error-rate"}, description = "Share of connector calls that fail, 0..1.")
+        private double errorRate;
+
+        @Nullable
+        @Parameter(
+                names = {"--envelopes-dir"},
+                description = "Directory with recorded BrassRing envelopes, `*.xml` files are replayed in loop. " +
+                        "Synthetic envelopes are generated by default."
+        )
+        private String envelopesDir;
+
+        @Parameter(names = {"-t", "--tag"}, description = "Message tag.")
+        private String tag = "BrassRingCandidateExport";
+
+        @Parameter(names = {"-h", "--help"}, help = true, description = "Show help description.")
+        private boolean help;
+    }
+}
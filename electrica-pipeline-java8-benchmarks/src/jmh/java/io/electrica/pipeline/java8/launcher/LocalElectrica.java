@@ -0,0 +1,109 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.sdk.java8.api.Connection;
+import io.electrica.sdk.java8.api.Connector;
+import io.electrica.sdk.java8.api.Electrica;
+import io.electrica.sdk.java8.api.MessageListener;
+import io.electrica.sdk.java8.api.http.Message;
+import lombok.AllArgsConstructor;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * In-process stand-in of Electrica cluster, so pipeline can run without network.
+ * <p>
+ * Message listeners registered by all connections are kept in single registry, so messages can be delivered to
+ * lambdas directly. Other connection calls, e.g. made by connector clients, simulate connector latency and errors.
+ */
+class LocalElectrica {
+
+    private final long latencyMillis;
+    private final double errorRate;
+    private final Map<UUID, Registration> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * @param latencyMillis simulated latency of connector call
+     * @param errorRate     share of connector calls, that fail
+     */
+    LocalElectrica(long latencyMillis, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Create Electrica instance, conforms launcher factory of Electrica instances by lambda name.
+     */
+    Electrica instance(String name) {
+        Connector connector = mock(Connector.class);
+        when(connector.connection(anyString())).thenAnswer(invocation -> mock(Connection.class, this::answer));
+        Electrica electrica = mock(Electrica.class);
+        when(electrica.connector(any())).thenReturn(connector);
+        return electrica;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object answer(InvocationOnMock invocation) throws Throwable {
+        switch (invocation.getMethod().getName()) {
+            case "addMessageListener":
+                UUID id = UUID.randomUUID();
+                listeners.put(id, new Registration(
+                        (Predicate<Message>) invocation.getArgument(0),
+                        (MessageListener) invocation.getArgument(1)
+                ));
+                return id;
+            case "removeMessageListener":
+                listeners.remove((UUID) invocation.getArgument(0));
+                return null;
+            case "close":
+            case "equals":
+            case "hashCode":
+            case "toString":
+                return RETURNS_DEFAULTS.answer(invocation);
+            default:
+                simulateCall();
+                return RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+
+    private void simulateCall() throws InterruptedException {
+        if (latencyMillis > 0) {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            throw new IllegalStateException("Simulated connector error");
+        }
+    }
+
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Deliver message to first registered listener that accepts it.
+     *
+     * @return {@code false} if no listener accepts message
+     */
+    boolean deliver(Message message) {
+        for (Registration registration : listeners.values()) {
+            if (registration.filter.test(message)) {
+                registration.listener.onMessage(message);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @AllArgsConstructor
+    private static class Registration {
+        private final Predicate<Message> filter;
+        private final MessageListener listener;
+    }
+}
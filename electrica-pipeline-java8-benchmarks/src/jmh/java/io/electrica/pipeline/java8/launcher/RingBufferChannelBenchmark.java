@@ -0,0 +1,40 @@
+package io.electrica.pipeline.java8.launcher;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-over cost of {@link RingBufferChannel} between concurrent producers and consumers.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RingBufferChannelBenchmark {
+
+    private static final Object ELEMENT = new Object();
+
+    @Param({"1024"})
+    public int capacity;
+
+    private RingBufferChannel<Object> channel;
+
+    @Setup
+    public void setUp() {
+        channel = new RingBufferChannel<>("benchmark", capacity);
+    }
+
+    @Benchmark
+    @Group("handOver")
+    @GroupThreads(2)
+    public boolean offer() {
+        return channel.offer(ELEMENT);
+    }
+
+    @Benchmark
+    @Group("handOver")
+    @GroupThreads(2)
+    public Object poll() {
+        return channel.poll();
+    }
+}
@@ -0,0 +1,218 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.hackerrank.dto.Attachment;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * XML stream reader, that hides attachment elements from reader consumer, e.g. data binder, and decodes their
+ * base64 content into temporary files in chunks instead. So attachment is neither materialized as string nor as
+ * decoded bytes, and heap used per attachment is bounded by chunk size.
+ * <p>
+ * Extracted attachments are owned by caller, that should close them once they aren't needed.
+ */
+@Slf4j
+class AttachmentExtractor extends StreamReaderDelegate {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final String FILE_PREFIX = "attachment-";
+    private static final String FILE_SUFFIX = ".tmp";
+
+    private final Set<String> elementNames;
+    @Nullable
+    private final Path directory;
+    private final List<Attachment> attachments = new ArrayList<>();
+
+    /**
+     * @param directory directory of attachment files, default temporary directory if {@code null}
+     */
+    AttachmentExtractor(XMLStreamReader reader, Set<String> elementNames, @Nullable Path directory) {
+        super(reader);
+        this.elementNames = elementNames;
+        this.directory = directory;
+    }
+
+    List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    /**
+     * Close attachments extracted so far, e.g. if binding failed.
+     */
+    void closeAttachments() {
+        close(attachments);
+    }
+
+    static void close(List<Attachment> attachments) {
+        for (Attachment attachment : attachments) {
+            try {
+                attachment.close();
+            } catch (IOException e) {
+                log.warn("Can't delete attachment file: {}", attachment.getFile(), e);
+            }
+        }
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        while (event == XMLStreamConstants.START_ELEMENT && elementNames.contains(getLocalName())) {
+            attachments.add(extract());
+            // skip end of attachment element
+            event = super.next();
+        }
+        return event;
+    }
+
+    /**
+     * Delegate would skip attachments otherwise, as it passes call to underlying reader.
+     */
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+                || (event == XMLStreamConstants.CDATA && isWhiteSpace())
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * Decode content of current attachment element, leaving reader at end of element.
+     */
+    private Attachment extract() throws XMLStreamException {
+        String elementName = getLocalName();
+        Path file = null;
+        try {
+            file = directory == null ?
+                    Files.createTempFile(FILE_PREFIX, FILE_SUFFIX) :
+                    Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+            long size;
+            ElementTextStream text = new ElementTextStream();
+            // MIME decoder ignores line breaks and indentation of encoded text
+            try (InputStream content = Base64.getMimeDecoder().wrap(text)) {
+                size = Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            text.skipRest();
+            return new Attachment(elementName, file, size);
+        } catch (IOException | RuntimeException e) {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            if (e.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) e.getCause();
+            }
+            throw new XMLStreamException("Can't extract attachment: " + elementName, getLocation(), e);
+        }
+    }
+
+    /**
+     * Text of current element as ASCII bytes, copied from underlying reader in chunks.
+     */
+    private class ElementTextStream extends InputStream {
+
+        private final char[] chunk = new char[CHUNK_SIZE];
+        private int length;
+        private int position;
+        // offset of next chunk within current text event
+        private int textOffset;
+        private boolean ended;
+
+        @Override
+        public int read() throws IOException {
+            if (position == length && !fill()) {
+                return -1;
+            }
+            return toByte(chunk[position++]);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (position == length && !fill()) {
+                return -1;
+            }
+            int result = Math.min(count, length - position);
+            for (int i = 0; i < result; i++) {
+                buffer[offset + i] = (byte) toByte(chunk[position++]);
+            }
+            return result;
+        }
+
+        /**
+         * Characters out of ASCII aren't part of base64 alphabet, map them to ignored space.
+         */
+        private int toByte(char c) {
+            return c < 0x80 ? c : ' ';
+        }
+
+        /**
+         * Skip rest of element text, e.g. after base64 padding, so reader stops at end of element.
+         */
+        void skipRest() throws IOException {
+            while (fill()) {
+                position = length;
+            }
+        }
+
+        private boolean fill() throws IOException {
+            XMLStreamReader reader = getParent();
+            try {
+                while (!ended) {
+                    int event = reader.getEventType();
+                    if (event == XMLStreamConstants.CHARACTERS
+                            || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE) {
+                        int count = reader.getTextCharacters(textOffset, chunk, 0, CHUNK_SIZE);
+                        if (count > 0) {
+                            textOffset += count;
+                            length = count;
+                            position = 0;
+                            return true;
+                        }
+                    }
+                    // current event consumed, e.g. element start or comment
+                    textOffset = 0;
+                    event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        ended = true;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        throw new XMLStreamException(
+                                "Unexpected element in attachment: " + reader.getLocalName(),
+                                reader.getLocation()
+                        );
+                    }
+                }
+                return false;
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -1,27 +1,73 @@
 package io.electrica.pipeline.java8.hackerrank;
 
 import com.google.auto.service.AutoService;
+import io.electrica.pipeline.java8.spi.AdaptiveConcurrencyLimiter;
 import io.electrica.pipeline.java8.spi.BackgroundProcessLambda;
 import io.electrica.pipeline.java8.spi.Lambda;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.pipeline.java8.spi.LambdaName;
+import io.electrica.pipeline.java8.spi.LambdaParameters;
+import io.electrica.pipeline.java8.spi.MessageBudget;
+import io.electrica.pipeline.java8.spi.MessageDispatcher;
+import io.electrica.pipeline.java8.spi.MessageSpool;
+import io.electrica.pipeline.java8.spi.Sharding;
 import io.electrica.sdk.java8.api.Connection;
-import io.electrica.sdk.java8.api.Connector;
 import io.electrica.sdk.java8.api.Electrica;
+import io.electrica.sdk.java8.api.MessageListener;
 import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.UUID;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import static io.electrica.pipeline.java8.hackerrank.CandidateExportMessageListener.MESSAGE_FILTER;
+import static io.electrica.pipeline.java8.hackerrank.CandidateExportMessageListener.MESSAGE_TAG;
+import static io.electrica.pipeline.java8.hackerrank.CandidateExportMessageListener.MESSAGE_TAG_KEY;
 
 @Slf4j
 @AutoService(Lambda.class)
+@LambdaName(BrassRingCandidateExportLambda.LAMBDA_NAME)
 public class BrassRingCandidateExportLambda extends BackgroundProcessLambda {
 
-    private static final String LAMBDA_NAME = "BrassRingCandidateExport";
+    static final String LAMBDA_NAME = "BrassRingCandidateExport";
     private static final String HACKERRANK_CONNECTION_NAME = "BrassRing";
+    private static final String ON_MESSAGE_OPERATION = "onMessage";
+    private static final String ON_MESSAGE_REJECTED_OPERATION = "onMessageRejected";
+    private static final MessageBudget MESSAGE_BUDGET = new MessageBudget(32, 64, 500);
+    private static final int EXPORT_QUEUE_CAPACITY = 1000;
+    private static final int EXPORT_BATCH_SIZE = 50;
+    private static final long EXPORT_MAX_BATCH_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final int DEFAULT_EXPORT_THREADS = 16;
+    private static final long IDEMPOTENCY_CACHE_SIZE = 10_000;
+    private static final long IDEMPOTENCY_CACHE_TTL = TimeUnit.HOURS.toMillis(1);
+    /**
+     * Lambda parameter with path to file to persist idempotency cache between restarts. Not persisted if unset.
+     */
+    private static final String IDEMPOTENCY_CACHE_FILE_PARAMETER = "idempotencyCacheFile";
+    /**
+     * Lambda parameter with directory of decoded candidate attachments. Default temporary directory if unset.
+     */
+    private static final String ATTACHMENT_DIR_PARAMETER = "attachmentDir";
+    /**
+     * Lambda parameter with number of threads to export candidates of the same envelope or batch in parallel.
+     */
+    private static final String EXPORT_THREADS_PARAMETER = "exportThreads";
+    /**
+     * Lambda parameter to accept candidates for batch export and respond right away, {@code true} by default.
+     * Candidates are exported before response otherwise, and always if lambda has no spool, as accepted candidates
+     * are lost on stop unless spooled. Final outcome of accepted candidates is passed as follow-up status message to
+     * {@link LambdaParameters#OUTPUT_CHANNEL}, if set.
+     */
+    private static final String BATCH_EXPORT_PARAMETER = "batchExport";
+    private static final String IDEMPOTENCY_CACHE_SHARED_NAME = "idempotencyCache";
+    private static final String EXPORT_LIMITER_SHARED_NAME = "exportLimiter";
 
-    private Connection connection;
-    private UUID listenerId;
+    private MessageDispatcher dispatcher;
+    private MessageListener messageHandler;
+    private CandidateBatchExporter batchExporter;
+    private ThreadPoolExecutor exportExecutor;
 
     @Override
     public String getName() {
@@ -32,16 +78,116 @@ public class BrassRingCandidateExportLambda extends BackgroundProcessLambda {
     public void initialize(Electrica electrica) throws Exception {
         super.initialize(electrica);
 
-        Connector connector = electrica.connector(HackerRankV3Candidates.ERN);
-        connection = connector.connection(HACKERRANK_CONNECTION_NAME);
-        HackerRankV3Candidates candidates = new HackerRankV3Candidates(connection);
-        listenerId = connection.addMessageListener(MESSAGE_FILTER, new CandidateExportMessageListener(candidates));
+        Connection connection = electrica.connector(HackerRankV3Candidates.ERN).connection(HACKERRANK_CONNECTION_NAME);
+        LambdaMetrics metrics = getContext().getMetrics();
+        int exportThreads = getContext().getParameters().getInt(EXPORT_THREADS_PARAMETER, DEFAULT_EXPORT_THREADS);
+        exportExecutor = new ThreadPoolExecutor(
+                exportThreads,
+                exportThreads,
+                0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(exportThreads),
+                getContext().getThreadFactoryProvider().newThreadFactory(LAMBDA_NAME + "-export-"),
+                // saturated pool throttles caller instead of failing export
+                (task, executor) -> task.run()
+        );
+        // shared by instances, so concurrent HackerRank calls of lambda as a whole are limited
+        AdaptiveConcurrencyLimiter exportLimiter = getContext().getShared(
+                EXPORT_LIMITER_SHARED_NAME,
+                AdaptiveConcurrencyLimiter.class,
+                () -> CandidateExporter.newLimiter(metrics)
+        );
+        CandidateExporter exporter = new CandidateExporter(
+                new HackerRankV3Candidates(connection),
+                metrics,
+                exportExecutor,
+                exportLimiter
+        );
+        MessageSpool spool = getContext().getSpool();
+        // in synchronous mode batch exporter exports only candidates recovered from spool
+        boolean batchExport = getContext().getParameters().getBoolean(BATCH_EXPORT_PARAMETER, true);
+        if (batchExport && spool == null) {
+            log.info("Lambda has no spool, candidates are exported before response");
+            batchExport = false;
+        }
+        // follow-up status messages are passed to next stage, that delivers them to BrassRing
+        String statusChannel = getContext().getParameters().getString(LambdaParameters.OUTPUT_CHANNEL);
+        if (statusChannel == null) {
+            log.info("Lambda has no output channel, export outcomes of accepted candidates are only logged");
+        }
+        batchExporter = new CandidateBatchExporter(
+                exporter,
+                EXPORT_QUEUE_CAPACITY,
+                EXPORT_BATCH_SIZE,
+                EXPORT_MAX_BATCH_DELAY,
+                spool,
+                statusChannel == null ? null : getContext().getChannel(statusChannel, String.class)
+        );
+        // shared by instances, so redelivery to another instance hits cache and cache file is written once
+        IdempotencyCache idempotencyCache = getContext().getShared(
+                IDEMPOTENCY_CACHE_SHARED_NAME,
+                IdempotencyCache.class,
+                this::loadIdempotencyCache
+        );
+        String attachmentDir = getContext().getParameters().getString(ATTACHMENT_DIR_PARAMETER);
+        CandidateExportMessageListener listener = new CandidateExportMessageListener(
+                exporter,
+                batchExport ? batchExporter : null,
+                idempotencyCache,
+                spool,
+                attachmentDir == null ? null : Paths.get(attachmentDir)
+        );
+        if (spool != null) {
+            for (MessageSpool.Entry entry : spool.recover()) {
+                List<CandidateExportTask> tasks = listener.recover(entry);
+                if (tasks.isEmpty()) {
+                    spool.complete(entry.getId());
+                } else {
+                    batchExporter.recover(tasks);
+                }
+            }
+        }
+        Sharding sharding = getContext().getSharding();
+        messageHandler = getContext().limit(
+                metrics.instrument(ON_MESSAGE_OPERATION, listener),
+                metrics.instrument(ON_MESSAGE_REJECTED_OPERATION, listener::busy),
+                MESSAGE_BUDGET
+        );
+        // shared by instances, that get messages in turn, dispatcher is attached on first registration
+        dispatcher = getContext().getDispatcher(electrica, HackerRankV3Candidates.ERN, HACKERRANK_CONNECTION_NAME);
+        dispatcher.register(MESSAGE_TAG_KEY, MESSAGE_TAG, message -> sharding.owns(
+                CandidateExportMessageListener.transactId(message.getPayload())
+        ), messageHandler);
+    }
+
+    private IdempotencyCache loadIdempotencyCache() {
+        String idempotencyCacheFile = getContext().getParameters().getString(IDEMPOTENCY_CACHE_FILE_PARAMETER);
+        IdempotencyCache result = new IdempotencyCache(
+                IDEMPOTENCY_CACHE_SIZE,
+                IDEMPOTENCY_CACHE_TTL,
+                idempotencyCacheFile == null ? null : Paths.get(idempotencyCacheFile)
+        );
+        result.load();
+        return result;
+    }
+
+    @Override
+    public void onStopSignal() {
+        super.onStopSignal();
+        batchExporter.stop();
+    }
+
+    @Override
+    public void doWork(Electrica electrica) throws Exception {
+        // export accepted and recovered candidates until stop signal
+        batchExporter.run();
     }
 
     @Override
     public void destroy(Electrica electrica) throws Exception {
         super.destroy(electrica);
 
-        connection.removeMessageListener(listenerId);
+        dispatcher.unregister(MESSAGE_TAG_KEY, MESSAGE_TAG, messageHandler);
+        exportExecutor.shutdown();
     }
 }
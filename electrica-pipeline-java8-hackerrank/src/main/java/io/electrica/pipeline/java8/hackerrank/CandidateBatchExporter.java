@@ -0,0 +1,292 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.connector.brassring.application.v1.model.Status;
+import io.electrica.pipeline.java8.spi.Channel;
+import io.electrica.pipeline.java8.spi.MessageSpool;
+import io.electrica.pipeline.java8.spi.RateLimitedLog;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background stage that decouples candidate export from message handling.
+ * <p>
+ * Candidates are accepted into bounded queue and flushed to HackerRank in batches, limited by size and by
+ * time passed since first candidate of the batch has been accepted. Each batch is submitted by single bulk
+ * HackerRank call, so outbound calls are reduced by batch size. Failed candidates are retried with exponential
+ * backoff up to {@link #MAX_EXPORT_ATTEMPTS} times. Spool entry is completed once all candidates of its message are
+ * exported, or parked if any of them failed all attempts. Candidates left to retry on stop keep their spool entries
+ * pending, so they are recovered on restart.
+ * <p>
+ * Once all candidates of message are exported or failed all attempts, follow-up status message with final status
+ * of each candidate is passed to status channel, if any, for next stage to deliver it to BrassRing.
+ */
+@Slf4j
+class CandidateBatchExporter {
+
+    private static final long POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_ERROR_RECORDS_PER_MINUTE = 10;
+    private static final int MAX_EXPORT_ATTEMPTS = 5;
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private final CandidateExporter exporter;
+    private final BlockingQueue<CandidateExportTask> queue;
+    private final Queue<CandidateExportTask> recovered = new ConcurrentLinkedQueue<>();
+    // accessed by run thread only
+    private final DelayQueue<Retry> retries = new DelayQueue<>();
+    private final Map<CandidateExportTask, Integer> attempts = new HashMap<>();
+    @Nullable
+    private final MessageSpool spool;
+    // spool entry id to number of its candidates not exported yet
+    private final ConcurrentMap<Long, Integer> spoolEntryTasks = new ConcurrentHashMap<>();
+    // spool entries with candidates, that failed all export attempts
+    private final Set<Long> failedSpoolEntries = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private final Channel<String> statusChannel;
+    private final int batchSize;
+    private final long maxBatchDelayNanos;
+
+    // export of whole batches fails during upstream outage
+    private final RateLimitedLog errorLog = new RateLimitedLog(log, MAX_ERROR_RECORDS_PER_MINUTE, 1, TimeUnit.MINUTES);
+
+    private volatile boolean stopped;
+
+    CandidateBatchExporter(
+            CandidateExporter exporter,
+            int queueCapacity,
+            int batchSize,
+            long maxBatchDelay,
+            @Nullable MessageSpool spool,
+            @Nullable Channel<String> statusChannel
+    ) {
+        this.exporter = exporter;
+        this.spool = spool;
+        this.statusChannel = statusChannel;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelay);
+    }
+
+    /**
+     * Accept all candidates of message for export or none of them, so rejected message can be redelivered as is.
+     *
+     * @return {@code false} if queue can't fit all candidates or exporter stopped
+     */
+    synchronized boolean offer(List<CandidateExportTask> tasks) {
+        // queue is only drained concurrently, so remaining capacity can't shrink before tasks added
+        if (stopped || queue.remainingCapacity() < tasks.size()) {
+            return false;
+        }
+        countSpoolEntryTasks(tasks);
+        queue.addAll(tasks);
+        return true;
+    }
+
+    /**
+     * Accept candidates of message recovered from spool. Recovered candidates aren't limited by queue capacity and
+     * exported first.
+     */
+    void recover(List<CandidateExportTask> tasks) {
+        countSpoolEntryTasks(tasks);
+        recovered.addAll(tasks);
+    }
+
+    private void countSpoolEntryTasks(List<CandidateExportTask> tasks) {
+        for (CandidateExportTask task : tasks) {
+            if (task.getSpoolEntryId() != null) {
+                spoolEntryTasks.merge(task.getSpoolEntryId(), 1, Integer::sum);
+            }
+        }
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Flush accepted candidates until {@link #stop()} invoked. Candidates accepted before stop are exported
+     * before return, but aren't retried anymore.
+     */
+    void run() throws InterruptedException {
+        List<CandidateExportTask> batch = new ArrayList<>(batchSize);
+        CandidateExportTask recoveredTask;
+        while ((recoveredTask = recovered.poll()) != null) {
+            batch.add(recoveredTask);
+            if (batch.size() == batchSize || recovered.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        while (!stopped || !queue.isEmpty()) {
+            // poll returns retries, which delay expired
+            Retry retry;
+            while (batch.size() < batchSize && (retry = retries.poll()) != null) {
+                batch.add(retry.task);
+            }
+            if (batch.isEmpty()) {
+                CandidateExportTask first = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            }
+            fillBatch(batch);
+            flush(batch);
+            batch.clear();
+        }
+
+        queue.drainTo(batch);
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+        for (Retry retry : retries) {
+            abandon(retry.task);
+        }
+        retries.clear();
+    }
+
+    private void fillBatch(List<CandidateExportTask> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxBatchDelayNanos;
+        while (batch.size() < batchSize) {
+            if (stopped) {
+                queue.drainTo(batch, batchSize - batch.size());
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            CandidateExportTask next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<CandidateExportTask> batch) {
+        Map<CandidateExportTask, Exception> errors = exporter.exportBatch(batch);
+        for (CandidateExportTask task : batch) {
+            Exception error = errors.get(task);
+            if (error == null) {
+                log.info(
+                        "Candidate exported, transactId: {}, packetId: {}",
+                        task.getTransactId(),
+                        task.getPacketId()
+                );
+            } else {
+                int attempt = attempts.getOrDefault(task, 1);
+                errorLog.error(
+                        "Candidate export attempt {} failed, transactId: {}, packetId: {}",
+                        attempt,
+                        task.getTransactId(),
+                        task.getPacketId(),
+                        error
+                );
+                if (attempt < MAX_EXPORT_ATTEMPTS) {
+                    if (stopped) {
+                        abandon(task);
+                    } else {
+                        attempts.put(task, attempt + 1);
+                        retries.add(new Retry(task, RETRY_DELAY << (attempt - 1)));
+                    }
+                    continue;
+                }
+                if (task.getSpoolEntryId() != null) {
+                    failedSpoolEntries.add(task.getSpoolEntryId());
+                }
+            }
+            attempts.remove(task);
+            finishSpoolEntry(task);
+            report(task, error);
+            task.release();
+        }
+        log.debug("Flushed batch of {} candidates, failed: {}", batch.size(), errors.size());
+    }
+
+    /**
+     * Give up candidate, that still can be exported, on stop. Its spool entry stays pending.
+     */
+    private void abandon(CandidateExportTask task) {
+        attempts.remove(task);
+        task.release();
+        log.warn(
+                "Candidate export abandoned on stop, transactId: {}, packetId: {}, spool entry: {}",
+                task.getTransactId(),
+                task.getPacketId(),
+                task.getSpoolEntryId()
+        );
+    }
+
+    private void finishSpoolEntry(CandidateExportTask task) {
+        Long spoolEntryId = task.getSpoolEntryId();
+        if (spool == null || spoolEntryId == null) {
+            return;
+        }
+        // entry is finished once the last of its tasks is
+        if (spoolEntryTasks.computeIfPresent(spoolEntryId, (id, count) -> count > 1 ? count - 1 : null) == null) {
+            try {
+                if (failedSpoolEntries.remove(spoolEntryId)) {
+                    spool.park(spoolEntryId);
+                } else {
+                    spool.complete(spoolEntryId);
+                }
+            } catch (IOException e) {
+                log.error("Can't finish spool entry: {}", spoolEntryId, e);
+            }
+        }
+    }
+
+    private void report(CandidateExportTask task, @Nullable Exception error) {
+        ExportReport report = task.getReport();
+        if (statusChannel == null || report == null) {
+            return;
+        }
+        Status status = error == null ?
+                CandidateExportMessageListener.createExportedStatus() :
+                CandidateExportMessageListener.createErrorStatus(error);
+        if (!report.complete(task.getPacketIndex(), status)) {
+            return;
+        }
+        try {
+            // not waiting for free space, so slow delivery can't stall export
+            if (!statusChannel.offer(report.createStatusMessage())) {
+                errorLog.error(
+                        "Status channel is full, follow-up status dropped, transactId: {}",
+                        task.getTransactId()
+                );
+            }
+        } catch (IOException e) {
+            errorLog.error("Can't create follow-up status, transactId: {}", task.getTransactId(), e);
+        }
+    }
+
+    private static class Retry implements Delayed {
+
+        private final CandidateExportTask task;
+        private final long readyAt;
+
+        private Retry(CandidateExportTask task, long delay) {
+            this.task = task;
+            this.readyAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(readyAt, ((Retry) other).readyAt);
+        }
+    }
+}
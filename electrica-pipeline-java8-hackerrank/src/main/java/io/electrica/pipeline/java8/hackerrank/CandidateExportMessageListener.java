@@ -1,42 +1,162 @@
 package io.electrica.pipeline.java8.hackerrank;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import io.electrica.connector.brassring.application.v1.model.Envelope;
 import io.electrica.connector.brassring.application.v1.model.Packet;
 import io.electrica.connector.brassring.application.v1.model.Status;
 import io.electrica.pipeline.java8.hackerrank.dto.CandidateDto;
 import io.electrica.pipeline.java8.hackerrank.dto.RequisitionDto;
+import io.electrica.pipeline.java8.spi.MessageSpool;
+import io.electrica.pipeline.java8.spi.RateLimitedLog;
 import io.electrica.sdk.java8.api.MessageListener;
 import io.electrica.sdk.java8.api.exception.IntegrationException;
 import io.electrica.sdk.java8.api.http.Message;
-import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.annotation.Nullable;
-import java.util.Objects;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class CandidateExportMessageListener implements MessageListener {
 
-    private static final String MESSAGE_TAG_KEY = "tag";
-    private static final String MESSAGE_TAG = "BrassRingCandidateExport";
-    static final Predicate<Message> MESSAGE_FILTER = message -> {
-        String tag = message.getPropertiesMap().get(MESSAGE_TAG_KEY);
-        return Objects.equals(MESSAGE_TAG, tag);
-    };
+    static final String MESSAGE_TAG_KEY = "tag";
+    static final String MESSAGE_TAG = "BrassRingCandidateExport";
+    private static final String SUCCESS_STATUS_CODE = "200";
+    private static final int MAX_ERROR_RECORDS_PER_MINUTE = 10;
+    private static final String TRANSACT_ID_START_TAG = "<TransactId>";
+    private static final String TRANSACT_ID_END_TAG = "</TransactId>";
+    private static final String BUSY_RESPONSE_TEMPLATE_REQUEST =
+            "<Envelope><TransactInfo><TransactId>0</TransactId></TransactInfo></Envelope>";
 
-    private final HackerRankV3Candidates candidates;
-    private final XmlMapper mapper;
+    private final CandidateExporter exporter;
+    @Nullable
+    private final CandidateBatchExporter batchExporter;
+    private final IdempotencyCache idempotencyCache;
+    @Nullable
+    private final MessageSpool spool;
+    @Nullable
+    private final Path attachmentDirectory;
+    // errors repeat for each message during upstream outage
+    private final RateLimitedLog errorLog = new RateLimitedLog(log, MAX_ERROR_RECORDS_PER_MINUTE, 1, TimeUnit.MINUTES);
+
+    // Immutable and thread-safe, so built once and shared by all concurrent invocations
+    private final XmlFactory xmlFactory;
+    private final ObjectReader envelopeReader;
+    private final ObjectReader packetInfoReader;
+    private final ObjectWriter envelopeWriter;
+    private final ObjectReader candidateReader;
+    private final ObjectReader requisitionReader;
+    // busy response split around TransactId, so it's built without parsing request, null if template isn't built
+    @Nullable
+    private final String busyResponsePrefix;
+    @Nullable
+    private final String busyResponseSuffix;
 
-    CandidateExportMessageListener(HackerRankV3Candidates candidates) {
-        this.candidates = candidates;
-        mapper = new XmlMapper();
+    /**
+     * Create listener that exports candidate before response is returned, or just accepts candidate into
+     * specified batch exporter, if any, and responds immediately. Final outcome of accepted candidates is reported
+     * by follow-up status message then, see {@link ExportReport}. Successful responses are remembered in
+     * idempotency cache and returned as is for redelivered requests. If spool specified, accepted requests are
+     * spooled before response, so they survive restart. Candidate attachments are decoded to files of specified
+     * directory, default temporary directory if {@code null}.
+     */
+    CandidateExportMessageListener(
+            CandidateExporter exporter,
+            @Nullable CandidateBatchExporter batchExporter,
+            IdempotencyCache idempotencyCache,
+            @Nullable MessageSpool spool,
+            @Nullable Path attachmentDirectory
+    ) {
+        this.exporter = exporter;
+        this.batchExporter = batchExporter;
+        this.idempotencyCache = idempotencyCache;
+        this.spool = spool;
+        this.attachmentDirectory = attachmentDirectory;
+        XmlMapper mapper = new XmlMapper();
+        xmlFactory = mapper.getFactory();
+        envelopeReader = mapper.readerFor(Envelope.class);
+        packetInfoReader = mapper.readerFor(Packet.PacketInfo.class);
+        envelopeWriter = mapper.writerFor(Envelope.class);
+        candidateReader = mapper.readerFor(CandidateDto.class);
+        requisitionReader = mapper.readerFor(RequisitionDto.class);
+
+        String busyResponse = createBusyResponseTemplate();
+        int start = busyResponse == null ? -1 : busyResponse.indexOf(TRANSACT_ID_START_TAG);
+        int end = start < 0 ? -1 : busyResponse.indexOf(TRANSACT_ID_END_TAG, start);
+        if (end < 0) {
+            busyResponsePrefix = null;
+            busyResponseSuffix = null;
+        } else {
+            busyResponsePrefix = busyResponse.substring(0, start + TRANSACT_ID_START_TAG.length());
+            busyResponseSuffix = busyResponse.substring(end);
+        }
     }
 
-    private static Status createStatus(String code, String shortDescription, String longDescription) {
+    @Nullable
+    private String createBusyResponseTemplate() {
+        try {
+            Envelope request = envelopeReader.readValue(BUSY_RESPONSE_TEMPLATE_REQUEST);
+            request.setPackets(Collections.emptyList());
+            return envelopeWriter.writeValueAsString(createResponseEnvelope(request, createBusyStatus()));
+        } catch (Exception e) {
+            log.warn("Can't create busy response template, busy responses will be built per request", e);
+            return null;
+        }
+    }
+
+    /**
+     * Read request envelope. Envelope without packets element gets empty packet list, so it's handled as any
+     * other request without candidate packets.
+     */
+    private Envelope readEnvelope(String payload) throws IOException {
+        Envelope result = envelopeReader.readValue(payload);
+        if (result.getPackets() == null) {
+            result.setPackets(Collections.emptyList());
+        }
+        return result;
+    }
+
+    private static Status createBusyStatus() {
+        return createStatus(
+                "405",
+                "Background Request Submission Not Successful",
+                "Server is busy, retry later"
+        );
+    }
+
+    /**
+     * Extract TransactId of request envelope by plain text search, without parsing whole envelope. Used to route
+     * message before it's accepted, so should be cheap.
+     *
+     * @return empty string if envelope has no TransactId
+     */
+    static String transactId(@Nullable String payload) {
+        if (payload == null) {
+            return "";
+        }
+        int start = payload.indexOf(TRANSACT_ID_START_TAG);
+        if (start < 0) {
+            return "";
+        }
+        start += TRANSACT_ID_START_TAG.length();
+        int end = payload.indexOf(TRANSACT_ID_END_TAG, start);
+        return end < 0 ? "" : payload.substring(start, end).trim();
+    }
+
+    static Status createStatus(String code, String shortDescription, String longDescription) {
         Status status = new Status();
         status.setCode(code);
         status.setShortDescription(shortDescription);
@@ -66,14 +186,29 @@ public class CandidateExportMessageListener implements MessageListener {
         return result;
     }
 
-    private static Envelope createResponseEnvelope(Envelope request, Status status) {
+    static Envelope createResponseEnvelope(Envelope request, Status status) {
+        return createResponseEnvelope(request, status, Collections.nCopies(request.getPackets().size(), null));
+    }
+
+    /**
+     * Create response with own status of each request packet. Packets without own status, e.g. requisition, get
+     * envelope status.
+     *
+     * @param packetStatuses statuses by packet index, {@code null} if packet has no own status
+     */
+    static Envelope createResponseEnvelope(Envelope request, Status status, List<Status> packetStatuses) {
+        List<Packet> requestPackets = request.getPackets();
+        List<Packet> responsePackets = new ArrayList<>(requestPackets.size());
+        for (int i = 0; i < requestPackets.size(); i++) {
+            Status packetStatus = packetStatuses.get(i);
+            Packet requestPacket = requestPackets.get(i);
+            responsePackets.add(createResponsePacket(packetStatus == null ? status : packetStatus, requestPacket));
+        }
+
         Envelope result = new Envelope();
         result.setVersion(request.getVersion());
         result.setSender(request.getSender());
-        result.setPackets(request.getPackets().stream()
-                .map(requestPacket -> createResponsePacket(status, requestPacket))
-                .collect(Collectors.toList())
-        );
+        result.setPackets(responsePackets);
         result.setRecipient(request.getRecipient());
         result.setTransactInfo(createResponseTransactInfo(request, status));
         return result;
@@ -82,74 +217,359 @@ public class CandidateExportMessageListener implements MessageListener {
     @Nullable
     @Override
     public String onMessage(Message message) {
-        Envelope request;
+        String requestKey = IdempotencyCache.key(message.getPayload());
+        if (requestKey != null) {
+            String cachedResponse = idempotencyCache.get(requestKey);
+            if (cachedResponse != null) {
+                log.debug("Redelivered request, respond from cache: {}", requestKey);
+                return cachedResponse;
+            }
+        }
+
+        ParsedRequest parsed;
         try {
-            request = mapper.readValue(message.getPayload(), Envelope.class);
+            parsed = readRequest(xmlFactory.getXMLInputFactory().createXMLStreamReader(
+                    new StringReader(message.getPayload())
+            ));
         } catch (Exception e) {
-            log.error("Envelope deserialization error", e);
+            errorLog.error("Envelope deserialization error", e);
             return e.getMessage();
         }
 
+        Envelope request = parsed.envelope;
         Status status;
+        Status[] packetStatuses = parsed.packetStatuses;
+        Map<Integer, CandidateExportTask> tasks = Collections.emptyMap();
+        boolean accepted = false;
         try {
-            CandidateDto candidate = request.getPackets().stream()
-                    .filter(packet -> packet.getPayload().contains(CandidateDto.ROOT_TAG))
-                    .findFirst()
-                    .map(this::parseCandidate)
-                    .orElseThrow(() -> new IllegalArgumentException("Candidate payload not found"));
-
-            RequisitionDto requisition = request.getPackets().stream()
-                    .filter(packet -> packet.getPayload().contains(RequisitionDto.ROOT_TAG))
-                    .findFirst()
-                    .map(this::parseRequisition)
-                    .orElse(null);
-
-            exportCandidate(candidate, requisition);
-            status = createStatus(
-                    "200",
-                    "Candidate data was exported successfully",
-                    "Candidate data was exported successfully"
-            );
-        } catch (IntegrationException e) {
-            log.error("Integration error occur: " + e, e);
-            status = createStatus(
+            tasks = createTasks(parsed);
+            if (batchExporter == null) {
+                // candidates of bulk envelope are exported in parallel
+                Map<CandidateExportTask, Exception> errors = exporter.exportAll(new ArrayList<>(tasks.values()));
+                for (Map.Entry<Integer, CandidateExportTask> task : tasks.entrySet()) {
+                    Exception error = errors.get(task.getValue());
+                    packetStatuses[task.getKey()] = error == null ? createExportedStatus() : errorStatus(error);
+                }
+            } else if (!tasks.isEmpty()) {
+                if (spool != null) {
+                    // single entry for all candidates of request, completed once all of them exported
+                    long spoolEntryId = spool.append(message.getPayload().getBytes(StandardCharsets.UTF_8));
+                    tasks.replaceAll((index, task) -> task.spooled(spoolEntryId));
+                }
+                // final outcome is reported by follow-up status message, once all candidates are exported
+                ExportReport report = new ExportReport(request, packetStatuses, tasks.size(), envelopeWriter);
+                tasks.replaceAll((index, task) -> task.reported(report));
+                accepted = batchExporter.offer(new ArrayList<>(tasks.values()));
+                Status taskStatus;
+                if (accepted) {
+                    taskStatus = createStatus(
+                            SUCCESS_STATUS_CODE,
+                            "Candidate data was accepted for export",
+                            "Candidate data was accepted for export"
+                    );
+                } else {
+                    if (spool != null) {
+                        // rejected request will be redelivered, so don't recover it
+                        spool.complete(tasks.values().iterator().next().getSpoolEntryId());
+                    }
+                    taskStatus = createStatus(
+                            "405",
+                            "Background Request Submission Not Successful",
+                            "Candidate export queue is full, retry later"
+                    );
+                }
+                for (Integer index : tasks.keySet()) {
+                    packetStatuses[index] = taskStatus;
+                }
+            }
+            status = envelopeStatus(packetStatuses);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                // thrown by this thread, packet errors are thrown by export threads or restore status themselves
+                Thread.currentThread().interrupt();
+            }
+            status = errorStatus(e);
+        } finally {
+            if (!accepted) {
+                // accepted tasks are released by batch exporter
+                tasks.values().forEach(CandidateExportTask::release);
+            }
+        }
+
+        try {
+            Envelope response = createResponseEnvelope(request, status, Arrays.asList(packetStatuses));
+            String result = envelopeWriter.writeValueAsString(response);
+            if (requestKey != null && SUCCESS_STATUS_CODE.equals(status.getCode())) {
+                idempotencyCache.put(requestKey, result);
+            }
+            return result;
+        } catch (Exception e) {
+            errorLog.error("Envelope serialization error", e);
+            return e.getMessage();
+        }
+    }
+
+    static Status createExportedStatus() {
+        return createStatus(
+                SUCCESS_STATUS_CODE,
+                "Candidate data was exported successfully",
+                "Candidate data was exported successfully"
+        );
+    }
+
+    /**
+     * Status of request or packet failed by specified error, that is logged.
+     */
+    private Status errorStatus(Exception e) {
+        if (e instanceof IntegrationException) {
+            errorLog.error("Integration error occur", e);
+        } else if (!(e instanceof InterruptedException)) {
+            errorLog.error("Generic error occur", e);
+        }
+        return createErrorStatus(e);
+    }
+
+    /**
+     * Status of request or packet failed by specified error, without logging it.
+     */
+    static Status createErrorStatus(Exception e) {
+        if (e instanceof IntegrationException) {
+            return createStatus(
                     "405",
                     "Background Request Submission Not Successful",
                     e.getMessage()
             );
-        } catch (Exception e) {
-            log.error("Generic error occur", e);
-            status = createStatus(
+        } else if (e instanceof InterruptedException) {
+            return createStatus(
                     "405",
-                    "Generic Error Occur",
-                    e.getMessage()
+                    "Background Request Submission Not Successful",
+                    "Export interrupted, retry later"
             );
         }
+        return createStatus(
+                "405",
+                "Generic Error Occur",
+                e.getMessage()
+        );
+    }
 
+    /**
+     * Request is successful if all its candidate packets are, otherwise it gets status of first failed packet.
+     */
+    static Status envelopeStatus(Status[] packetStatuses) {
+        Status result = null;
+        for (Status status : packetStatuses) {
+            if (status != null) {
+                if (!SUCCESS_STATUS_CODE.equals(status.getCode())) {
+                    return status;
+                }
+                if (result == null) {
+                    result = status;
+                }
+            }
+        }
+        if (result == null) {
+            throw new IllegalStateException("No candidate packet processed");
+        }
+        return result;
+    }
+
+    /**
+     * Read request envelope in single pass. Packets are routed by root element of their payloads as they are met,
+     * candidates and requisition are bound straight from payload stream. Candidate packets that can't be read get
+     * error status, so rest of candidates are still exported.
+     *
+     * @param reader reader of request, that is closed once read
+     */
+    private ParsedRequest readRequest(XMLStreamReader reader) throws IOException, XMLStreamException {
+        ParsedRequest result = new ParsedRequest();
         try {
-            Envelope response = createResponseEnvelope(request, status);
-            return mapper.writeValueAsString(response);
+            reader.nextTag();
+            PacketStreamReader packetReader = new PacketStreamReader(
+                    reader,
+                    xmlFactory,
+                    packetInfoReader,
+                    (packetIndex, payload) -> readPayload(result, packetIndex, payload)
+            );
+            result.envelope = bind(envelopeReader, packetReader);
+            result.envelope.setPackets(packetReader.getPackets());
+            result.packetStatuses = new Status[packetReader.getPackets().size()];
+            result.candidateErrors.forEach((packetIndex, status) -> result.packetStatuses[packetIndex] = status);
+            return result;
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            for (CandidateDto candidate : result.candidates.values()) {
+                AttachmentExtractor.close(candidate.getAttachments());
+            }
+            throw e;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void readPayload(
+            ParsedRequest request,
+            int packetIndex,
+            Reader payload
+    ) throws IOException, XMLStreamException {
+        XMLStreamReader reader = openPayload(payload);
+        if (reader == null) {
+            return;
+        }
+        try {
+            String rootElementName = reader.getLocalName();
+            if (CandidateDto.ROOT_ELEMENT_NAME.equals(rootElementName)) {
+                request.candidateFound = true;
+                try {
+                    request.candidates.put(packetIndex, bindCandidate(reader));
+                } catch (IOException | RuntimeException e) {
+                    request.candidateErrors.put(packetIndex, errorStatus(e));
+                }
+            } else if (request.requisition == null && RequisitionDto.ROOT_ELEMENT_NAME.equals(rootElementName)) {
+                request.requisition = bind(requisitionReader, reader);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create own export task for each candidate of request, together with requisition of request, if any.
+     *
+     * @return export tasks by packet index
+     */
+    private static Map<Integer, CandidateExportTask> createTasks(ParsedRequest request) {
+        if (!request.candidateFound) {
+            throw new IllegalArgumentException("Candidate payload not found");
+        }
+        List<Packet> packets = request.envelope.getPackets();
+        String transactId = String.valueOf(request.envelope.getTransactInfo().getTransactId());
+        Map<Integer, CandidateExportTask> result = new LinkedHashMap<>();
+        for (Map.Entry<Integer, CandidateDto> candidate : request.candidates.entrySet()) {
+            result.put(candidate.getKey(), new CandidateExportTask(
+                    transactId,
+                    String.valueOf(packets.get(candidate.getKey()).getPacketInfo().getPacketId()),
+                    candidate.getKey(),
+                    candidate.getValue(),
+                    request.requisition,
+                    null,
+                    null
+            ));
+        }
+        return result;
+    }
+
+    /**
+     * Read export tasks of request spooled before restart. Candidate packets that can't be read are skipped, but
+     * get error status in follow-up status message of request.
+     *
+     * @return empty list if spooled request can't be read
+     */
+    List<CandidateExportTask> recover(MessageSpool.Entry entry) {
+        try {
+            ParsedRequest request = readRequest(xmlFactory.getXMLInputFactory().createXMLStreamReader(
+                    new ByteArrayInputStream(entry.getPayload())
+            ));
+            Map<Integer, CandidateExportTask> tasks = createTasks(request);
+            ExportReport report = new ExportReport(
+                    request.envelope,
+                    request.packetStatuses,
+                    tasks.size(),
+                    envelopeWriter
+            );
+            List<CandidateExportTask> result = new ArrayList<>();
+            for (CandidateExportTask task : tasks.values()) {
+                result.add(task.spooled(entry.getId()).reported(report));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Can't read spooled request: {}", entry.getId(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Respond to request with "busy, retry later" status without processing it. Used to shed load, so response
+     * isn't remembered in idempotency cache.
+     * <p>
+     * Response is built from precomputed template and text-scanned TransactId, so request isn't parsed when
+     * listener is overloaded. Such response has envelope status only, without packets echoed.
+     */
+    @Nullable
+    String busy(Message message) {
+        if (busyResponsePrefix != null) {
+            return busyResponsePrefix + transactId(message.getPayload()) + busyResponseSuffix;
+        }
+        try {
+            Envelope request = readEnvelope(message.getPayload());
+            return envelopeWriter.writeValueAsString(createResponseEnvelope(request, createBusyStatus()));
         } catch (Exception e) {
-            log.error("Envelope serialization error", e);
+            errorLog.error("Busy response creation error", e);
             return e.getMessage();
         }
     }
 
-    private void exportCandidate(
-            CandidateDto candidate,
-            @Nullable RequisitionDto requisition
-    ) throws IntegrationException {
-        // TODO implement me
+    /**
+     * Open packet payload as XML stream positioned at root element, so packet can be routed by root element
+     * name and bound afterwards within the same single pass.
+     *
+     * @return {@code null} if payload is empty or isn't XML document
+     */
+    @Nullable
+    private XMLStreamReader openPayload(Reader payload) {
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlFactory.getXMLInputFactory().createXMLStreamReader(payload);
+            reader.nextTag();
+            return reader;
+        } catch (XMLStreamException e) {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            log.debug("Skip packet with non-XML payload: {}", e.getMessage());
+            return null;
+        }
     }
 
-    @SneakyThrows
-    private RequisitionDto parseRequisition(Packet packet) {
-        return mapper.readValue(packet.getPayload(), RequisitionDto.class);
+    /**
+     * Bind candidate with attachments streamed to files, so attachment content isn't held by heap.
+     */
+    private CandidateDto bindCandidate(XMLStreamReader reader) throws IOException {
+        AttachmentExtractor extractor =
+                new AttachmentExtractor(reader, CandidateDto.ATTACHMENT_ELEMENT_NAMES, attachmentDirectory);
+        try {
+            CandidateDto candidate = bind(candidateReader, extractor);
+            candidate.setAttachments(extractor.getAttachments());
+            return candidate;
+        } catch (IOException | RuntimeException e) {
+            extractor.closeAttachments();
+            throw e;
+        }
     }
 
-    @SneakyThrows
-    private CandidateDto parseCandidate(Packet packet) {
-        return mapper.readValue(packet.getPayload(), CandidateDto.class);
+    private <T> T bind(ObjectReader objectReader, XMLStreamReader reader) throws IOException {
+        try (JsonParser parser = xmlFactory.createParser(reader)) {
+            return objectReader.readValue(parser);
+        }
+    }
+
+    /**
+     * Request envelope read together with candidates and requisition of its packets.
+     */
+    private static class ParsedRequest {
+
+        // packets without payloads
+        private Envelope envelope;
+        // statuses by packet index, set for candidate packets that can't be read
+        private Status[] packetStatuses;
+        private final Map<Integer, CandidateDto> candidates = new LinkedHashMap<>();
+        private final Map<Integer, Status> candidateErrors = new HashMap<>();
+        @Nullable
+        private RequisitionDto requisition;
+        private boolean candidateFound;
     }
 
 }
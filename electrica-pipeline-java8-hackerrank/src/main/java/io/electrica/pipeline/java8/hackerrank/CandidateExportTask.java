@@ -0,0 +1,97 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.hackerrank.dto.CandidateDto;
+import io.electrica.pipeline.java8.hackerrank.dto.RequisitionDto;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import javax.annotation.Nullable;
+
+/**
+ * Candidate accepted for export together with BrassRing identifiers of originating packet.
+ * <p>
+ * Export attempt can outlive caller, e.g. after it timed out, so release requested during attempt is deferred
+ * until attempt finishes. Attachment files aren't deleted under running export.
+ */
+@Getter
+class CandidateExportTask {
+    private final String transactId;
+    private final String packetId;
+    private final int packetIndex;
+    private final CandidateDto candidate;
+    @Nullable
+    private final RequisitionDto requisition;
+    /**
+     * Id of spool entry of originating message, if message spooled.
+     */
+    @Nullable
+    private final Long spoolEntryId;
+    /**
+     * Report of originating message, if its outcome is reported by follow-up status message.
+     */
+    @Nullable
+    private final ExportReport report;
+
+    // guarded by this
+    @Getter(AccessLevel.NONE)
+    private boolean exporting;
+    @Getter(AccessLevel.NONE)
+    private boolean releaseRequested;
+
+    CandidateExportTask(
+            String transactId,
+            String packetId,
+            int packetIndex,
+            CandidateDto candidate,
+            @Nullable RequisitionDto requisition,
+            @Nullable Long spoolEntryId,
+            @Nullable ExportReport report
+    ) {
+        this.transactId = transactId;
+        this.packetId = packetId;
+        this.packetIndex = packetIndex;
+        this.candidate = candidate;
+        this.requisition = requisition;
+        this.spoolEntryId = spoolEntryId;
+        this.report = report;
+    }
+
+    CandidateExportTask spooled(long spoolEntryId) {
+        return new CandidateExportTask(transactId, packetId, packetIndex, candidate, requisition, spoolEntryId, report);
+    }
+
+    CandidateExportTask reported(ExportReport report) {
+        return new CandidateExportTask(transactId, packetId, packetIndex, candidate, requisition, spoolEntryId, report);
+    }
+
+    synchronized void exportStarted() {
+        exporting = true;
+    }
+
+    synchronized void exportFinished() {
+        exporting = false;
+        if (releaseRequested) {
+            releaseRequested = false;
+            AttachmentExtractor.close(candidate.getAttachments());
+        }
+    }
+
+    /**
+     * Check if export attempt still runs, so candidate can't be exported again yet.
+     */
+    synchronized boolean isExporting() {
+        return exporting;
+    }
+
+    /**
+     * Delete files of candidate attachments, once candidate is exported or rejected, or once running export
+     * attempt finishes.
+     */
+    synchronized void release() {
+        if (exporting) {
+            releaseRequested = true;
+        } else {
+            AttachmentExtractor.close(candidate.getAttachments());
+        }
+    }
+}
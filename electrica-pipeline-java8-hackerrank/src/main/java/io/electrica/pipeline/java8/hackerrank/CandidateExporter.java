@@ -0,0 +1,361 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.hackerrank.dto.CandidateDto;
+import io.electrica.pipeline.java8.hackerrank.dto.RequisitionDto;
+import io.electrica.pipeline.java8.spi.AdaptiveConcurrencyLimiter;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.sdk.java8.api.exception.IntegrationException;
+import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Export BrassRing candidates to HackerRank. Concurrent HackerRank calls are limited by adaptive limiter, which
+ * backs off on integration errors and rising latency. Slowly changing HackerRank data is looked up through
+ * read-through caches, as candidates mostly arrive in bursts for the same few requisitions.
+ * <p>
+ * Candidates of bulk envelope are exported in parallel by specified executor, so envelope takes about as long as
+ * its slowest candidate. Batches of background export are submitted by single bulk HackerRank call instead.
+ */
+class CandidateExporter {
+
+    static final String EXPORT_OPERATION = "export";
+    static final String EXPORT_BATCH_OPERATION = "exportBatch";
+    private static final String EXPORT_LIMIT_GAUGE = "exportLimit";
+    private static final String EXPORT_IN_FLIGHT_GAUGE = "exportInFlight";
+    private static final int INITIAL_EXPORT_LIMIT = 4;
+    private static final int MIN_EXPORT_LIMIT = 1;
+    private static final int MAX_EXPORT_LIMIT = 64;
+    private static final long EXPORT_ALL_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+    private static final long LOOKUP_CACHE_SIZE = 1_000;
+    private static final long LOOKUP_CACHE_TTL = TimeUnit.MINUTES.toMillis(10);
+    private static final long LOOKUP_CACHE_NEGATIVE_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    private final HackerRankV3Candidates candidates;
+    private final LambdaMetrics metrics;
+    private final Executor executor;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ReadThroughCache<String, String> testIds = new ReadThroughCache<>(
+            LOOKUP_CACHE_SIZE,
+            LOOKUP_CACHE_TTL,
+            LOOKUP_CACHE_NEGATIVE_TTL,
+            this::lookupTestId
+    );
+    private final ReadThroughCache<String, String> candidateIds = new ReadThroughCache<>(
+            LOOKUP_CACHE_SIZE,
+            LOOKUP_CACHE_TTL,
+            LOOKUP_CACHE_NEGATIVE_TTL,
+            this::lookupCandidateId
+    );
+
+    /**
+     * @param executor bounded executor, that runs rejected tasks in caller thread, so batch export can't be lost
+     * @param limiter  limiter created by {@link #newLimiter(LambdaMetrics)}, shared by exporters of all lambda
+     *                 instances, so limit applies to lambda as a whole
+     */
+    CandidateExporter(
+            HackerRankV3Candidates candidates,
+            LambdaMetrics metrics,
+            Executor executor,
+            AdaptiveConcurrencyLimiter limiter
+    ) {
+        this.candidates = candidates;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Create limiter of HackerRank calls and register its gauges to specified metrics.
+     */
+    static AdaptiveConcurrencyLimiter newLimiter(LambdaMetrics metrics) {
+        AdaptiveConcurrencyLimiter limiter =
+                new AdaptiveConcurrencyLimiter(INITIAL_EXPORT_LIMIT, MIN_EXPORT_LIMIT, MAX_EXPORT_LIMIT);
+        metrics.gauge(EXPORT_LIMIT_GAUGE, limiter::getLimit);
+        metrics.gauge(EXPORT_IN_FLIGHT_GAUGE, limiter::getInFlight);
+        return limiter;
+    }
+
+    void export(
+            CandidateDto candidate,
+            @Nullable RequisitionDto requisition
+    ) throws IntegrationException, InterruptedException {
+        long start = limiter.acquire();
+        boolean success = false;
+        try {
+            doExport(candidate, requisition);
+            success = true;
+            limiter.onSuccess(start);
+        } catch (IntegrationException e) {
+            limiter.onDropped(start);
+            throw e;
+        } catch (RuntimeException e) {
+            limiter.onIgnore(start);
+            throw e;
+        } finally {
+            metrics.record(EXPORT_OPERATION, System.nanoTime() - start, success);
+        }
+    }
+
+    private void doExport(
+            CandidateDto candidate,
+            @Nullable RequisitionDto requisition
+    ) throws IntegrationException {
+        Lookup lookup = lookup(candidate);
+        submit(candidate, requisition, lookup);
+        submitted(candidate, lookup);
+    }
+
+    private Lookup lookup(CandidateDto candidate) throws IntegrationException {
+        String testId = candidate.getJobCode() == null ? null : testIds.get(candidate.getJobCode());
+        String candidateId = candidate.getEmail() == null ? null : candidateIds.get(candidate.getEmail());
+        return new Lookup(testId, candidateId);
+    }
+
+    private void submitted(CandidateDto candidate, Lookup lookup) {
+        if (lookup.getCandidateId() == null && candidate.getEmail() != null) {
+            // created candidate is visible for next lookups at once, instead of cached miss
+            candidateIds.invalidate(candidate.getEmail());
+        }
+    }
+
+    private void submit(
+            CandidateDto candidate,
+            @Nullable RequisitionDto requisition,
+            Lookup lookup
+    ) throws IntegrationException {
+        // TODO implement me
+    }
+
+    /**
+     * Export batch of candidates by single bulk HackerRank call, so batch costs one outbound call instead of one per
+     * candidate, apart from lookups missed by caches. Batch takes single limiter permit. Interrupt status of caller
+     * thread is preserved.
+     *
+     * @return export errors by failed tasks, empty if all candidates exported successfully
+     */
+    Map<CandidateExportTask, Exception> exportBatch(List<CandidateExportTask> tasks) {
+        Map<CandidateExportTask, Exception> errors = new HashMap<>();
+        long start;
+        try {
+            start = limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            tasks.forEach(task -> errors.put(task, e));
+            return errors;
+        }
+        boolean success = false;
+        Map<CandidateExportTask, Lookup> lookups = new LinkedHashMap<>();
+        try {
+            for (CandidateExportTask task : tasks) {
+                try {
+                    lookups.put(task, lookup(task.getCandidate()));
+                } catch (IntegrationException e) {
+                    // failed lookup fails own candidate only, the rest of batch is still submitted
+                    errors.put(task, e);
+                }
+            }
+            if (!lookups.isEmpty()) {
+                errors.putAll(submitBatch(lookups));
+            }
+            success = true;
+            limiter.onSuccess(start);
+        } catch (IntegrationException e) {
+            limiter.onDropped(start);
+            lookups.keySet().forEach(task -> errors.put(task, e));
+        } catch (RuntimeException e) {
+            limiter.onIgnore(start);
+            tasks.forEach(task -> errors.putIfAbsent(task, e));
+        } finally {
+            metrics.record(EXPORT_BATCH_OPERATION, System.nanoTime() - start, success);
+        }
+        if (success) {
+            lookups.forEach((task, lookup) -> {
+                if (!errors.containsKey(task)) {
+                    submitted(task.getCandidate(), lookup);
+                }
+            });
+        }
+        return errors;
+    }
+
+    /**
+     * Submit candidates together with their looked up HackerRank ids by single bulk call.
+     *
+     * @return errors of candidates rejected by HackerRank, empty if all of them accepted
+     */
+    Map<CandidateExportTask, Exception> submitBatch(
+            Map<CandidateExportTask, Lookup> lookups
+    ) throws IntegrationException {
+        // TODO implement me
+        return Collections.emptyMap();
+    }
+
+    /**
+     * HackerRank test assigned to BrassRing requisition job code. Called on cache miss only.
+     *
+     * @return {@code null} if no test assigned
+     */
+    @Nullable
+    String lookupTestId(String jobCode) throws IntegrationException {
+        // TODO implement me
+        return null;
+    }
+
+    /**
+     * Existing HackerRank candidate with specified email. Called on cache miss only.
+     *
+     * @return {@code null} if candidate doesn't exist yet
+     */
+    @Nullable
+    String lookupCandidateId(String email) throws IntegrationException {
+        // TODO implement me
+        return null;
+    }
+
+    /**
+     * Export batch of candidates. Candidates not exported in time, or before caller thread is interrupted, are
+     * cancelled and reported as failed by {@link TimeoutException} or {@link InterruptedException}. Cancelled
+     * export may still run until it leaves HackerRank call, so its task stays exporting till then, see
+     * {@link CandidateExportTask#isExporting()}. Interrupt status of caller thread is preserved.
+     *
+     * @return export errors by failed tasks, empty if all candidates exported successfully
+     */
+    Map<CandidateExportTask, Exception> exportAll(List<CandidateExportTask> tasks) {
+        Map<CandidateExportTask, Exception> errors = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(tasks.size());
+        List<Export> exports = new ArrayList<>(tasks.size());
+        for (CandidateExportTask task : tasks) {
+            Export export = new Export(task, errors, done);
+            exports.add(export);
+            task.exportStarted();
+            executor.execute(export);
+        }
+        Exception unfinishedError = null;
+        try {
+            if (!done.await(EXPORT_ALL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                unfinishedError = new TimeoutException("Export timed out after " + EXPORT_ALL_TIMEOUT + "ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unfinishedError = e;
+        }
+        if (unfinishedError != null) {
+            for (Export export : exports) {
+                if (export.cancel()) {
+                    errors.putIfAbsent(export.task, unfinishedError);
+                }
+            }
+        }
+        // snapshot, cancelled exports can't change result anymore
+        return new HashMap<>(errors);
+    }
+
+    /**
+     * HackerRank ids of candidate looked up before submit.
+     */
+    static class Lookup {
+
+        /**
+         * Test assigned to requisition job code, {@code null} if none.
+         */
+        @Nullable
+        private final String testId;
+        /**
+         * Existing candidate with the same email, {@code null} if candidate is created by submit.
+         */
+        @Nullable
+        private final String candidateId;
+
+        private Lookup(@Nullable String testId, @Nullable String candidateId) {
+            this.testId = testId;
+            this.candidateId = candidateId;
+        }
+
+        @Nullable
+        String getTestId() {
+            return testId;
+        }
+
+        @Nullable
+        String getCandidateId() {
+            return candidateId;
+        }
+    }
+
+    /**
+     * Export of single task, that can be cancelled before or while it runs.
+     */
+    private class Export implements Runnable {
+
+        private final CandidateExportTask task;
+        private final Map<CandidateExportTask, Exception> errors;
+        private final CountDownLatch done;
+        // guarded by this
+        private boolean cancelled;
+        private boolean finished;
+        @Nullable
+        private Thread thread;
+
+        private Export(CandidateExportTask task, Map<CandidateExportTask, Exception> errors, CountDownLatch done) {
+            this.task = task;
+            this.errors = errors;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (start()) {
+                    export(task.getCandidate(), task.getRequisition());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                errors.put(task, e);
+            } catch (Exception e) {
+                errors.put(task, e);
+            } finally {
+                synchronized (this) {
+                    thread = null;
+                    finished = true;
+                }
+                task.exportFinished();
+                done.countDown();
+            }
+        }
+
+        private synchronized boolean start() {
+            if (!cancelled) {
+                thread = Thread.currentThread();
+            }
+            return !cancelled;
+        }
+
+        /**
+         * Cancel export, interrupting its HackerRank call, if any.
+         *
+         * @return {@code false} if export already finished
+         */
+        private synchronized boolean cancel() {
+            if (finished) {
+                return false;
+            }
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.electrica.connector.brassring.application.v1.model.Envelope;
+import io.electrica.connector.brassring.application.v1.model.Status;
+
+import java.util.Arrays;
+
+/**
+ * Export outcome of candidates of one request accepted for batch export. Once all candidates of request are exported
+ * or failed all attempts, it's reported by follow-up status message, that is BrassRing response envelope with final
+ * status of each packet.
+ */
+class ExportReport {
+
+    private final Envelope request;
+    private final ObjectWriter envelopeWriter;
+    // guarded by this
+    private final Status[] packetStatuses;
+    private int remaining;
+
+    /**
+     * @param request        request envelope, with packet info only
+     * @param packetStatuses statuses by packet index known at accept time, e.g. of unreadable candidate packets
+     * @param candidates     number of candidates of request accepted for export
+     */
+    ExportReport(Envelope request, Status[] packetStatuses, int candidates, ObjectWriter envelopeWriter) {
+        this.request = request;
+        this.packetStatuses = packetStatuses.clone();
+        this.remaining = candidates;
+        this.envelopeWriter = envelopeWriter;
+    }
+
+    /**
+     * Record final status of candidate packet.
+     *
+     * @return {@code true} if it's the last candidate of request, so request can be reported
+     */
+    synchronized boolean complete(int packetIndex, Status status) {
+        packetStatuses[packetIndex] = status;
+        return --remaining == 0;
+    }
+
+    /**
+     * Create follow-up status message of request.
+     */
+    synchronized String createStatusMessage() throws JsonProcessingException {
+        Status status = CandidateExportMessageListener.envelopeStatus(packetStatuses);
+        return envelopeWriter.writeValueAsString(
+                CandidateExportMessageListener.createResponseEnvelope(request, status, Arrays.asList(packetStatuses))
+        );
+    }
+}
@@ -0,0 +1,155 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of response envelopes by BrassRing request identity, used to answer redelivered requests
+ * without repeated export.
+ * <p>
+ * Entries are evicted by size and TTL. Cache can be optionally persisted to local file to survive restarts. Cache
+ * is shared by all lambda instances, so it's loaded and saved once, see {@link #close()}.
+ */
+@Slf4j
+class IdempotencyCache implements Closeable {
+
+    private static final char FIELD_SEPARATOR = '\t';
+
+    private final long ttl;
+    @Nullable
+    private final Path file;
+    private final Cache<String, Entry> cache;
+
+    IdempotencyCache(long maximumSize, long ttl, @Nullable Path file) {
+        this.ttl = ttl;
+        this.file = file;
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * Request identity composed from TransactId and hash of request payload. Built from raw payload without
+     * parsing it, so redelivered request is answered before it's parsed.
+     *
+     * @return {@code null} if request has no TransactId
+     */
+    @Nullable
+    static String key(@Nullable String payload) {
+        String transactId = CandidateExportMessageListener.transactId(payload);
+        if (transactId.isEmpty()) {
+            return null;
+        }
+        // redelivered request has the same payload, so hash tells apart distinct requests with the same TransactId
+        return transactId + ':' + Hashing.murmur3_128().hashString(payload, StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    String get(String key) {
+        Entry entry = cache.getIfPresent(key);
+        // loaded entries keep their original write time
+        if (entry == null || isExpired(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.getResponse();
+    }
+
+    void put(String key, String response) {
+        cache.put(key, new Entry(response, System.currentTimeMillis()));
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return entry.getCreatedAt() + ttl <= now;
+    }
+
+    void load() {
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Base64.Decoder decoder = Base64.getDecoder();
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(String.valueOf(FIELD_SEPARATOR), 3);
+                if (fields.length != 3) {
+                    continue;
+                }
+                Entry entry = new Entry(
+                        new String(decoder.decode(fields[2]), StandardCharsets.UTF_8),
+                        Long.parseLong(fields[1])
+                );
+                if (!isExpired(entry, now)) {
+                    cache.put(new String(decoder.decode(fields[0]), StandardCharsets.UTF_8), entry);
+                    count++;
+                }
+            }
+            log.info("Loaded {} idempotency cache entries from: {}", count, file);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error loading idempotency cache from: {}", file, e);
+        }
+    }
+
+    void save() {
+        if (file == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Base64.Encoder encoder = Base64.getEncoder();
+        try {
+            Path tempFile = Paths.get(file + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : cache.asMap().entrySet()) {
+                    Entry entry = e.getValue();
+                    if (isExpired(entry, now)) {
+                        continue;
+                    }
+                    writer.write(encoder.encodeToString(e.getKey().getBytes(StandardCharsets.UTF_8)));
+                    writer.write(FIELD_SEPARATOR);
+                    writer.write(Long.toString(entry.getCreatedAt()));
+                    writer.write(FIELD_SEPARATOR);
+                    writer.write(encoder.encodeToString(entry.getResponse().getBytes(StandardCharsets.UTF_8)));
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Error saving idempotency cache to: {}", file, e);
+        }
+    }
+
+    /**
+     * Save cache, once it isn't used by lambda instances anymore.
+     */
+    @Override
+    public void close() {
+        save();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class Entry {
+        private final String response;
+        private final long createdAt;
+    }
+}
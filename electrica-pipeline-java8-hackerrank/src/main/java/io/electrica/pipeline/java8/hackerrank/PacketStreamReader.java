@@ -0,0 +1,223 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import io.electrica.connector.brassring.application.v1.model.Packet;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * XML stream reader of BrassRing envelope, that hides packet elements from reader consumer, e.g. envelope data
+ * binder, and handles each packet as it is met instead. Packet info is bound on its own, packet payload is passed to
+ * handler as character stream of embedded XML document. So envelope is read in single pass, and payload is neither
+ * materialized as string nor kept after handled.
+ */
+class PacketStreamReader extends StreamReaderDelegate {
+
+    private static final String PACKET_ELEMENT_NAME = "Packet";
+    private static final String PACKET_INFO_ELEMENT_NAME = "PacketInfo";
+    private static final String PAYLOAD_ELEMENT_NAME = "Payload";
+    private static final int ENVELOPE_DEPTH = 1;
+
+    private final XmlFactory xmlFactory;
+    private final ObjectReader packetInfoReader;
+    private final PayloadHandler handler;
+    private final List<Packet> packets = new ArrayList<>();
+    // depth of current element, envelope is at depth 1
+    private int depth = ENVELOPE_DEPTH;
+
+    /**
+     * @param reader reader positioned at start of envelope element
+     */
+    PacketStreamReader(
+            XMLStreamReader reader,
+            XmlFactory xmlFactory,
+            ObjectReader packetInfoReader,
+            PayloadHandler handler
+    ) {
+        super(reader);
+        this.xmlFactory = xmlFactory;
+        this.packetInfoReader = packetInfoReader;
+        this.handler = handler;
+    }
+
+    /**
+     * Packets read so far with packet info only, without payloads.
+     */
+    List<Packet> getPackets() {
+        return packets;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        int event = super.next();
+        while (event == XMLStreamConstants.START_ELEMENT && depth == ENVELOPE_DEPTH &&
+                PACKET_ELEMENT_NAME.equals(getLocalName())) {
+            readPacket();
+            // skip end of packet element
+            event = super.next();
+        }
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+        }
+        return event;
+    }
+
+    /**
+     * Delegate would skip packets otherwise, as it passes call to underlying reader.
+     */
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+                || (event == XMLStreamConstants.CDATA && isWhiteSpace())
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    /**
+     * Read current packet element, leaving reader at end of element.
+     */
+    private void readPacket() throws XMLStreamException {
+        XMLStreamReader reader = getParent();
+        Packet packet = new Packet();
+        int index = packets.size();
+        packets.add(packet);
+        try {
+            int event;
+            while ((event = reader.next()) != XMLStreamConstants.END_ELEMENT) {
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                String elementName = reader.getLocalName();
+                if (PACKET_INFO_ELEMENT_NAME.equals(elementName)) {
+                    packet.setPacketInfo(bindPacketInfo(reader));
+                } else if (PAYLOAD_ELEMENT_NAME.equals(elementName)) {
+                    PayloadReader payload = new PayloadReader();
+                    handler.handle(index, payload);
+                    payload.skipRest();
+                } else {
+                    skipElement(reader);
+                }
+            }
+        } catch (IOException e) {
+            if (e.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) e.getCause();
+            }
+            throw new XMLStreamException("Can't read packet: " + index, getLocation(), e);
+        }
+    }
+
+    private Packet.PacketInfo bindPacketInfo(XMLStreamReader reader) throws IOException {
+        // parser closes its reader on close, but envelope reader is still in use
+        try (JsonParser parser = xmlFactory.createParser(new StreamReaderDelegate(reader) {
+            @Override
+            public void close() {
+            }
+        })) {
+            return packetInfoReader.readValue(parser);
+        }
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int elementDepth = 1;
+        while (elementDepth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                elementDepth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                elementDepth--;
+            }
+        }
+    }
+
+    /**
+     * Handler of packet payload.
+     */
+    @FunctionalInterface
+    interface PayloadHandler {
+
+        /**
+         * Handle payload of packet with specified index. Payload may be left unread, its rest is skipped.
+         */
+        void handle(int packetIndex, Reader payload) throws IOException, XMLStreamException;
+    }
+
+    /**
+     * Text of current payload element, copied from underlying reader by text events.
+     */
+    private class PayloadReader extends Reader {
+
+        // offset of next characters within current text event
+        private int textOffset;
+        private boolean ended;
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            XMLStreamReader reader = getParent();
+            try {
+                while (!ended) {
+                    int event = reader.getEventType();
+                    if (event == XMLStreamConstants.CHARACTERS
+                            || event == XMLStreamConstants.CDATA
+                            || event == XMLStreamConstants.SPACE) {
+                        int result = reader.getTextCharacters(textOffset, buffer, offset, count);
+                        if (result > 0) {
+                            textOffset += result;
+                            return result;
+                        }
+                    }
+                    // current event consumed, e.g. element start or comment
+                    textOffset = 0;
+                    event = reader.next();
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        ended = true;
+                    } else if (event == XMLStreamConstants.START_ELEMENT) {
+                        throw new XMLStreamException(
+                                "Unexpected element in payload: " + reader.getLocalName(),
+                                reader.getLocation()
+                        );
+                    }
+                }
+                return -1;
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Skip rest of payload, so reader stops at end of payload element.
+         */
+        void skipRest() throws IOException {
+            char[] buffer = new char[1024];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // skip
+            }
+        }
+
+        @Override
+        public void close() {
+            // payload ends with its element, envelope reader is still in use
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.electrica.sdk.java8.api.exception.IntegrationException;
+import lombok.AllArgsConstructor;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Read-through cache of slowly changing HackerRank data, e.g. tests by requisition.
+ * <p>
+ * Entries are evicted by size and TTL. Concurrent requests of the same missing key are collapsed into single load.
+ * Misses are cached as well, but for shorter TTL, so newly created data becomes visible soon. Load errors aren't
+ * cached.
+ */
+class ReadThroughCache<K, V> {
+
+    private final long negativeTtlNanos;
+    private final LoadingCache<K, Entry<V>> cache;
+
+    ReadThroughCache(long maximumSize, long ttl, long negativeTtl, Loader<K, V> loader) {
+        checkArgument(negativeTtl <= ttl, "Negative TTL can't exceed TTL: %s > %s", negativeTtl, ttl);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtl);
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, TimeUnit.MILLISECONDS)
+                .build(new CacheLoader<K, Entry<V>>() {
+                    @Override
+                    public Entry<V> load(K key) throws Exception {
+                        return new Entry<>(loader.load(key), System.nanoTime());
+                    }
+                });
+    }
+
+    /**
+     * Get cached value or load it, if absent.
+     *
+     * @return {@code null} if value doesn't exist
+     */
+    @Nullable
+    V get(K key) throws IntegrationException {
+        while (true) {
+            Entry<V> entry;
+            try {
+                entry = cache.get(key);
+            } catch (ExecutionException e) {
+                Throwables.throwIfInstanceOf(e.getCause(), IntegrationException.class);
+                throw new IllegalStateException("Can't load value: " + key, e.getCause());
+            } catch (UncheckedExecutionException e) {
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+            if (entry.value != null || System.nanoTime() - entry.loadedAt < negativeTtlNanos) {
+                return entry.value;
+            }
+            // expired miss, concurrent callers collapse into single reload again
+            cache.asMap().remove(key, entry);
+        }
+    }
+
+    void invalidate(K key) {
+        cache.invalidate(key);
+    }
+
+    @FunctionalInterface
+    interface Loader<K, V> {
+
+        /**
+         * @return {@code null} if value doesn't exist
+         */
+        @Nullable
+        V load(K key) throws IntegrationException;
+    }
+
+    @AllArgsConstructor
+    private static class Entry<V> {
+        @Nullable
+        private final V value;
+        private final long loadedAt;
+    }
+}
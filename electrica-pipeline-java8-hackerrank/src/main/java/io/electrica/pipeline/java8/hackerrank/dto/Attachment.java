@@ -0,0 +1,41 @@
+package io.electrica.pipeline.java8.hackerrank.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Handle of decoded candidate attachment, e.g. resume, kept in temporary file instead of heap. Content can be read
+ * as stream any number of times until handle closed.
+ */
+@Getter
+@AllArgsConstructor
+public class Attachment implements Closeable {
+
+    /**
+     * Name of payload element, that contained attachment.
+     */
+    private final String elementName;
+    private final Path file;
+    /**
+     * Decoded content size in bytes.
+     */
+    private final long size;
+
+    public InputStream openStream() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    /**
+     * Delete content file.
+     */
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(file);
+    }
+}
@@ -1,19 +1,63 @@
 package io.electrica.pipeline.java8.hackerrank.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 @JacksonXmlRootElement(localName = CandidateDto.ROOT_ELEMENT_NAME)
 public class CandidateDto {
 
     public static final String ROOT_ELEMENT_NAME = "CANDIDATE";
     public static final String ROOT_TAG = "<" + ROOT_ELEMENT_NAME + ">";
+    /**
+     * Elements with base64 encoded content, that is streamed to {@link Attachment} instead of binding.
+     */
+    public static final Set<String> ATTACHMENT_ELEMENT_NAMES =
+            Collections.unmodifiableSet(new HashSet<>(Arrays.asList("RESUME", "ATTACHMENT")));
 
     //<CANDIDATEID>
 //<REQUISITIONNUMBER>
 //<BRREQNUMBER>
-//<JOBCODE>
 //<STATUS>
-//<CANDIDATEMAIL>
 //<CANDIDATEFIRSTNAME>
 //<CANDIDATELASTNAME>
+
+    @JacksonXmlProperty(localName = "JOBCODE")
+    private String jobCode;
+
+    @JacksonXmlProperty(localName = "CANDIDATEMAIL")
+    private String email;
+
+    @JsonIgnore
+    private List<Attachment> attachments = Collections.emptyList();
+
+    public String getJobCode() {
+        return jobCode;
+    }
+
+    public void setJobCode(String jobCode) {
+        this.jobCode = jobCode;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public List<Attachment> getAttachments() {
+        return attachments;
+    }
+
+    public void setAttachments(List<Attachment> attachments) {
+        this.attachments = attachments;
+    }
 }
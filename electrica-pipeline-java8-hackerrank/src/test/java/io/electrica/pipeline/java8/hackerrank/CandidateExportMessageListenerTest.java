@@ -0,0 +1,52 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.spi.AdaptiveConcurrencyLimiter;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.sdk.java8.api.http.Message;
+import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CandidateExportMessageListenerTest {
+
+    private static final String ENVELOPE_WITHOUT_PACKETS = "<Envelope version=\"01.00\">" +
+            "<Sender><Id>12345</Id><Credential>25</Credential></Sender>" +
+            "<TransactInfo transactType=\"data\">" +
+            "<TransactId>1</TransactId>" +
+            "<TimeStamp>2018-12-01T10:00:00</TimeStamp>" +
+            "</TransactInfo>" +
+            "</Envelope>";
+
+    private final CandidateExportMessageListener listener = new CandidateExportMessageListener(
+            new CandidateExporter(
+                    mock(HackerRankV3Candidates.class),
+                    LambdaMetrics.NOOP,
+                    Runnable::run,
+                    new AdaptiveConcurrencyLimiter(1, 1, 1)
+            ),
+            null,
+            new IdempotencyCache(100, TimeUnit.MINUTES.toMillis(1), null),
+            null,
+            null
+    );
+
+    private static Message message(String payload) {
+        Message result = mock(Message.class);
+        when(result.getPayload()).thenReturn(payload);
+        return result;
+    }
+
+    @Test
+    void envelopeWithoutPacketsGetsErrorStatus() {
+        String response = listener.onMessage(message(ENVELOPE_WITHOUT_PACKETS));
+        assertNotNull(response);
+        assertTrue(response.contains("405"), response);
+        assertTrue(response.contains("Candidate payload not found"), response);
+    }
+}
@@ -0,0 +1,154 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.pipeline.java8.hackerrank.dto.Attachment;
+import io.electrica.pipeline.java8.hackerrank.dto.CandidateDto;
+import io.electrica.pipeline.java8.spi.AdaptiveConcurrencyLimiter;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.sdk.java8.hackerrank.v3.tests.v1.HackerRankV3Candidates;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class CandidateExporterTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final AtomicInteger testLookups = new AtomicInteger();
+    private final AtomicInteger candidateLookups = new AtomicInteger();
+    private final AtomicInteger batchSubmits = new AtomicInteger();
+    private final CandidateExporter exporter = new CandidateExporter(
+            mock(HackerRankV3Candidates.class),
+            LambdaMetrics.NOOP,
+            Runnable::run,
+            new AdaptiveConcurrencyLimiter(1, 1, 1)
+    ) {
+        @Nullable
+        @Override
+        String lookupTestId(String jobCode) {
+            testLookups.incrementAndGet();
+            return "test-" + jobCode;
+        }
+
+        @Nullable
+        @Override
+        String lookupCandidateId(String email) {
+            candidateLookups.incrementAndGet();
+            return "candidate-" + email;
+        }
+
+        @Override
+        Map<CandidateExportTask, Exception> submitBatch(Map<CandidateExportTask, Lookup> lookups) {
+            batchSubmits.incrementAndGet();
+            return Collections.emptyMap();
+        }
+    };
+
+    private static CandidateDto candidate(String jobCode, String email) {
+        CandidateDto result = new CandidateDto();
+        result.setJobCode(jobCode);
+        result.setEmail(email);
+        return result;
+    }
+
+    @Test
+    void repeatedLookupsSkipHackerRankCalls() throws Exception {
+        exporter.export(candidate("job", "first@example.com"), null);
+        exporter.export(candidate("job", "first@example.com"), null);
+        exporter.export(candidate("job", "second@example.com"), null);
+        assertEquals(1, testLookups.get());
+        assertEquals(2, candidateLookups.get());
+    }
+
+    @Test
+    void batchIsExportedByOneHackerRankCall() {
+        List<CandidateExportTask> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            CandidateDto candidate = candidate("job", i + "@example.com");
+            batch.add(new CandidateExportTask("1", String.valueOf(i), i, candidate, null, null, null));
+        }
+        assertTrue(exporter.exportBatch(batch).isEmpty());
+        assertEquals(1, batchSubmits.get());
+        assertEquals(1, testLookups.get());
+    }
+
+    @Test
+    void interruptedExportIsCancelledAndReleasedOnceFinished() throws Exception {
+        CountDownLatch exporting = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        AtomicBoolean exportInterrupted = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // export ignores interrupt until finished, like HackerRank call that doesn't respond to it
+        CandidateExporter blockingExporter = new CandidateExporter(
+                mock(HackerRankV3Candidates.class),
+                LambdaMetrics.NOOP,
+                executor,
+                new AdaptiveConcurrencyLimiter(1, 1, 1)
+        ) {
+            @Nullable
+            @Override
+            String lookupTestId(String jobCode) {
+                exporting.countDown();
+                while (true) {
+                    try {
+                        finish.await();
+                        return null;
+                    } catch (InterruptedException e) {
+                        exportInterrupted.set(true);
+                    }
+                }
+            }
+        };
+        Path file = Files.createTempFile("attachment", ".tmp");
+        try {
+            CandidateDto candidate = candidate("job", "first@example.com");
+            candidate.setAttachments(Collections.singletonList(new Attachment("RESUME", file, 0)));
+            CandidateExportTask task = new CandidateExportTask("1", "1", 0, candidate, null, null, null);
+
+            AtomicReference<Map<CandidateExportTask, Exception>> errors = new AtomicReference<>();
+            AtomicBoolean callerInterrupted = new AtomicBoolean();
+            Thread caller = new Thread(() -> {
+                errors.set(blockingExporter.exportAll(Collections.singletonList(task)));
+                callerInterrupted.set(Thread.currentThread().isInterrupted());
+            });
+            caller.start();
+            assertTrue(exporting.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            caller.interrupt();
+            caller.join(TIMEOUT);
+
+            assertTrue(errors.get().get(task) instanceof InterruptedException);
+            assertTrue(callerInterrupted.get());
+            assertTrue(task.isExporting());
+            task.release();
+            assertTrue(Files.exists(file), "Attachment deleted under running export");
+
+            finish.countDown();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+            while (task.isExporting()) {
+                assertTrue(System.nanoTime() < deadline, "Export doesn't finish");
+                Thread.sleep(1);
+            }
+            assertFalse(Files.exists(file));
+            assertTrue(exportInterrupted.get());
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+            Files.deleteIfExists(file);
+        }
+    }
+}
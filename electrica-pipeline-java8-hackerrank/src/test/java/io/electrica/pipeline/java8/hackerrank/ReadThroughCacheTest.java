@@ -0,0 +1,119 @@
+package io.electrica.pipeline.java8.hackerrank;
+
+import io.electrica.sdk.java8.api.exception.IntegrationException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadThroughCacheTest {
+
+    private static final long SIZE = 100;
+    private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void repeatedLookupIsLoadedOnce() throws Exception {
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, TTL, key -> {
+            loads.incrementAndGet();
+            return "value-" + key;
+        });
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value-a", cache.get("a"));
+        }
+        assertEquals(1, loads.get());
+        assertEquals("value-b", cache.get("b"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void missIsCachedForNegativeTtl() throws Exception {
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, TTL, key -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertNull(cache.get("a"));
+        assertNull(cache.get("a"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void expiredMissIsLoadedAgain() throws Exception {
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, 1, key -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertNull(cache.get("a"));
+        Thread.sleep(10);
+        assertNull(cache.get("a"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidatedKeyIsLoadedAgain() throws Exception {
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, TTL, key -> {
+            loads.incrementAndGet();
+            return "value";
+        });
+        cache.get("a");
+        cache.invalidate("a");
+        cache.get("a");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loadErrorIsNotCached() throws Exception {
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, TTL, key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IntegrationException();
+            }
+            return "value";
+        });
+        assertThrows(IntegrationException.class, () -> cache.get("a"));
+        assertEquals("value", cache.get("a"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void concurrentLookupsAreCollapsed() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ReadThroughCache<String, String> cache = new ReadThroughCache<>(SIZE, TTL, TTL, key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "value";
+        });
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("a")));
+            assertTrue(loading.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> cache.get("a")));
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(TIMEOUT, TimeUnit.MILLISECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.electrica.pipeline.java8.launcher;
+
+import javax.annotation.Nullable;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Set;
+
+/**
+ * Class loader of packages bundled identically into several lambda jars. It's parent of lambda jar class loaders,
+ * so such packages are loaded once and shared by lambdas. Other classes and resources of lambda jars aren't visible
+ * to it, they are loaded by class loader of own lambda jar.
+ */
+class BundledLibraryClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Set<String> packages;
+
+    /**
+     * @param urls     lambda jars that contain specified packages
+     * @param packages shared packages as entry name directories, e.g. {@code com/fasterxml/jackson/core}
+     */
+    BundledLibraryClassLoader(URL[] urls, Set<String> packages, ClassLoader parent) {
+        super(urls, parent);
+        this.packages = packages;
+    }
+
+    /**
+     * Directory of jar entry, that is package of class entry.
+     *
+     * @return {@code null} for entries in jar root
+     */
+    @Nullable
+    static String packageOf(String entryName) {
+        int index = entryName.lastIndexOf('/');
+        return index <= 0 ? null : entryName.substring(0, index);
+    }
+
+    private boolean isShared(String entryName) {
+        String name = entryName.startsWith("/") ? entryName.substring(1) : entryName;
+        String packageName = packageOf(name);
+        return packageName != null && packages.contains(packageName);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (!isShared(name.replace('.', '/') + ".class")) {
+            throw new ClassNotFoundException(name);
+        }
+        return super.findClass(name);
+    }
+
+    @Override
+    public URL findResource(String name) {
+        return isShared(name) ? super.findResource(name) : null;
+    }
+
+    /**
+     * Copies of shared resource are identical, so only first one is returned.
+     */
+    @Override
+    public Enumeration<URL> findResources(String name) {
+        URL url = findResource(name);
+        return url == null ? Collections.emptyEnumeration() : Collections.enumeration(Collections.singleton(url));
+    }
+}
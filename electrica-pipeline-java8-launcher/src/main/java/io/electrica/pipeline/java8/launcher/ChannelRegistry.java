@@ -0,0 +1,51 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.Channel;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Launcher-wide channels by name, so lambdas are wired into pipeline by channel names they request.
+ */
+@Slf4j
+class ChannelRegistry {
+
+    private final int capacity;
+    private final ConcurrentMap<String, TypedChannel> channels = new ConcurrentHashMap<>();
+
+    ChannelRegistry(int capacity) {
+        checkArgument(capacity > 0, "Channel capacity should be positive: %s", capacity);
+        this.capacity = capacity;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> Channel<T> getChannel(String name, Class<T> type) {
+        TypedChannel channel = channels.computeIfAbsent(name, n -> {
+            RingBufferChannel<T> result = new RingBufferChannel<>(n, capacity);
+            log.info("Created channel {} of {} with capacity {}", n, type.getName(), result.getCapacity());
+            return new TypedChannel(type, result);
+        });
+        // types of the same name loaded by different lambda class loaders don't match as well
+        checkArgument(
+                channel.type == type,
+                "Channel %s has element type %s of %s, requested %s of %s",
+                name,
+                channel.type.getName(),
+                channel.type.getClassLoader(),
+                type.getName(),
+                type.getClassLoader()
+        );
+        return (Channel<T>) channel.channel;
+    }
+
+    @AllArgsConstructor
+    private static class TypedChannel {
+        private final Class<?> type;
+        private final Channel<?> channel;
+    }
+}
@@ -0,0 +1,204 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.BoundedMessageListener;
+import io.electrica.pipeline.java8.spi.Channel;
+import io.electrica.pipeline.java8.spi.LambdaContext;
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import io.electrica.pipeline.java8.spi.LambdaParameters;
+import io.electrica.pipeline.java8.spi.MessageBudget;
+import io.electrica.pipeline.java8.spi.MessageDispatcher;
+import io.electrica.pipeline.java8.spi.MessageSpool;
+import io.electrica.pipeline.java8.spi.Sharding;
+import io.electrica.pipeline.java8.spi.ThreadFactoryProvider;
+import io.electrica.sdk.java8.api.Electrica;
+import io.electrica.sdk.java8.api.MessageListener;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@Slf4j
+@Getter
+@AllArgsConstructor
+class DefaultLambdaContext implements LambdaContext {
+
+    private static final int DISABLED_HEAP_SOFT_CAP = 100;
+
+    private final LambdaMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadFactoryProvider threadFactoryProvider;
+    @Nullable
+    private final LazyMessageSpool spool;
+    private final LambdaParameters parameters;
+    private final HeapUsageMonitor heapUsageMonitor;
+    private final Sharding sharding;
+    private final ChannelRegistry channels;
+    private final DispatcherRegistry dispatchers;
+    // guarded by this, in order of creation
+    @Getter(AccessLevel.NONE)
+    private final Map<String, Object> shared = new LinkedHashMap<>();
+    // threads created by lambda thread factories and SDK threads running lambda listeners
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Provider, that tracks threads of its factories as lambda threads while they run.
+     */
+    @Override
+    public ThreadFactoryProvider getThreadFactoryProvider() {
+        return new TrackingThreadFactoryProvider();
+    }
+
+    /**
+     * Provider of launcher own threads, e.g. pool threads of manager, that aren't lambda threads while idle.
+     */
+    ThreadFactoryProvider getLauncherThreadFactoryProvider() {
+        return threadFactoryProvider;
+    }
+
+    @Nullable
+    @Override
+    public MessageSpool getSpool() {
+        return spool == null ? null : spool.get();
+    }
+
+    /**
+     * Close spool, if it has been opened.
+     */
+    void closeSpool() {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    /**
+     * @return {@code null} if spool isn't configured or hasn't been opened by lambda
+     */
+    @Nullable
+    MessageSpool getOpenSpool() {
+        return spool == null ? null : spool.getIfOpen();
+    }
+
+    @Override
+    public <T> Channel<T> getChannel(String name, Class<T> type) {
+        Channel<T> channel = channels.getChannel(name, type);
+        metrics.gauge("channel." + name + ".size", channel::size);
+        return channel;
+    }
+
+    @Override
+    public MessageDispatcher getDispatcher(Electrica electrica, String connectorErn, String connectionName) {
+        return dispatchers.getDispatcher(electrica, connectorErn, connectionName);
+    }
+
+    @Override
+    public synchronized <T> T getShared(String name, Class<T> type, Callable<T> factory) throws Exception {
+        Object object = shared.get(name);
+        if (object == null) {
+            object = factory.call();
+            shared.put(name, object);
+        }
+        checkArgument(type.isInstance(object), "Shared object %s is of another type: %s", name, object.getClass());
+        return type.cast(object);
+    }
+
+    /**
+     * Close shared objects in reverse order of creation and forget them, so lambda restart creates new ones.
+     */
+    synchronized void closeShared() {
+        List<String> names = new ArrayList<>(shared.keySet());
+        List<Object> objects = new ArrayList<>(shared.values());
+        shared.clear();
+        for (int i = objects.size() - 1; i >= 0; i--) {
+            if (objects.get(i) instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) objects.get(i)).close();
+                } catch (Exception e) {
+                    log.error("Error closing shared object: {}", names.get(i), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public MessageListener limit(
+            MessageListener listener,
+            MessageListener rejectionListener,
+            MessageBudget defaults
+    ) {
+        int maxInFlight = parameters.getInt(LambdaParameters.MAX_IN_FLIGHT, defaults.getMaxInFlight());
+        int queueDepth = parameters.getInt(LambdaParameters.QUEUE_DEPTH, defaults.getQueueDepth());
+        long queueTimeout = parameters.getLong(LambdaParameters.QUEUE_TIMEOUT, defaults.getQueueTimeout());
+        int heapSoftCap = parameters.getInt(LambdaParameters.HEAP_SOFT_CAP, DISABLED_HEAP_SOFT_CAP);
+        if (maxInFlight == Integer.MAX_VALUE && heapSoftCap >= DISABLED_HEAP_SOFT_CAP) {
+            return track(listener);
+        }
+        return track(new BoundedMessageListener(
+                listener,
+                rejectionListener,
+                maxInFlight,
+                queueDepth,
+                queueTimeout,
+                TimeUnit.MILLISECONDS,
+                () -> heapUsageMonitor.getUsagePercent() >= heapSoftCap
+        ));
+    }
+
+    /**
+     * Track SDK thread as lambda thread while it runs specified listener.
+     */
+    private MessageListener track(MessageListener listener) {
+        return message -> {
+            Thread thread = Thread.currentThread();
+            // thread can be tracked already, e.g. if lambda invokes listener itself
+            boolean added = threads.add(thread);
+            try {
+                return listener.onMessage(message);
+            } finally {
+                if (added) {
+                    threads.remove(thread);
+                }
+            }
+        };
+    }
+
+    private class TrackingThreadFactoryProvider implements ThreadFactoryProvider {
+
+        @Override
+        public String getName() {
+            return threadFactoryProvider.getName();
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return threadFactoryProvider.isAvailable();
+        }
+
+        @Override
+        public ThreadFactory newThreadFactory(String namePrefix) {
+            ThreadFactory factory = threadFactoryProvider.newThreadFactory(namePrefix);
+            return task -> factory.newThread(() -> {
+                Thread thread = Thread.currentThread();
+                threads.add(thread);
+                try {
+                    task.run();
+                } finally {
+                    threads.remove(thread);
+                }
+            });
+        }
+    }
+}
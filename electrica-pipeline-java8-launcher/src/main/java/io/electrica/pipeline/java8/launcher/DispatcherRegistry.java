@@ -0,0 +1,35 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.MessageDispatcher;
+import io.electrica.sdk.java8.api.Electrica;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Launcher-wide message dispatchers by connection, so all lambdas and lambda instances, that use the same
+ * Electrica instance, attach single listener per connection.
+ */
+class DispatcherRegistry {
+
+    // guarded by this
+    private final Map<Electrica, Map<String, MessageDispatcher>> dispatchers = new IdentityHashMap<>();
+
+    synchronized MessageDispatcher getDispatcher(Electrica electrica, String connectorErn, String connectionName) {
+        return dispatchers.computeIfAbsent(electrica, key -> new HashMap<>()).computeIfAbsent(
+                connectorErn + '/' + connectionName,
+                key -> new MessageDispatcher(electrica.connector(connectorErn).connection(connectionName))
+        );
+    }
+
+    /**
+     * Detach and forget dispatchers of specified Electrica instance, e.g. when it's closed.
+     */
+    synchronized void release(Electrica electrica) {
+        Map<String, MessageDispatcher> released = dispatchers.remove(electrica);
+        if (released != null) {
+            released.values().forEach(MessageDispatcher::detach);
+        }
+    }
+}
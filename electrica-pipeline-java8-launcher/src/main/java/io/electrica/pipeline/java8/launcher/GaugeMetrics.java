@@ -0,0 +1,21 @@
+package io.electrica.pipeline.java8.launcher;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Current value of single lambda gauge. Value source is replaced when lambda registers gauge again, e.g. after
+ * restart.
+ */
+class GaugeMetrics implements GaugeMetricsMXBean {
+
+    private volatile LongSupplier source = () -> 0;
+
+    void setSource(LongSupplier source) {
+        this.source = source;
+    }
+
+    @Override
+    public long getValue() {
+        return source.getAsLong();
+    }
+}
@@ -0,0 +1,9 @@
+package io.electrica.pipeline.java8.launcher;
+
+/**
+ * JMX view of single lambda gauge.
+ */
+public interface GaugeMetricsMXBean {
+
+    long getValue();
+}
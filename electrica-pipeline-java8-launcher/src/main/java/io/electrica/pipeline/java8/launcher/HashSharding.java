@@ -0,0 +1,55 @@
+package io.electrica.pipeline.java8.launcher;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.electrica.pipeline.java8.spi.Sharding;
+import lombok.AllArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sharding by hash of key modulo shard count. Hash function is stable across JVMs, so all launchers agree on key
+ * owner, given the same shard count.
+ */
+class HashSharding implements Sharding {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    // index and count are updated together
+    private volatile Shard shard;
+
+    HashSharding(int index, int count) {
+        update(index, count);
+    }
+
+    void update(int index, int count) {
+        checkArgument(count > 0 && index >= 0 && index < count, "Wrong shard %s of %s", index, count);
+        shard = new Shard(index, count);
+    }
+
+    @Override
+    public boolean owns(String key) {
+        Shard current = shard;
+        if (current.count == 1) {
+            return true;
+        }
+        int hash = HASH_FUNCTION.hashString(key, StandardCharsets.UTF_8).asInt();
+        return Math.floorMod(hash, current.count) == current.index;
+    }
+
+    int getIndex() {
+        return shard.index;
+    }
+
+    int getCount() {
+        return shard.count;
+    }
+
+    @AllArgsConstructor
+    private static class Shard {
+        private final int index;
+        private final int count;
+    }
+}
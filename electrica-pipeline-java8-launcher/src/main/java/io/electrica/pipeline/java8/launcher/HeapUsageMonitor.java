@@ -0,0 +1,74 @@
+package io.electrica.pipeline.java8.launcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Launcher-wide heap usage, sampled periodically, so it's cheap to check on hot path.
+ * <p>
+ * Usage is occupancy of tenured pool after last collection, i.e. live data, rather than instantaneous heap usage,
+ * which includes garbage not collected yet and swings with every young collection. Instantaneous heap usage is
+ * used if JVM has no tenured pool with collection usage.
+ */
+@Slf4j
+class HeapUsageMonitor {
+
+    private static final long SAMPLE_INTERVAL = 500;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    @Nullable
+    private final MemoryPoolMXBean tenuredPool = findTenuredPool();
+    private volatile int usagePercent;
+
+    /**
+     * Tenured pool is the only heap pool, that supports both usage and collection usage thresholds.
+     */
+    @Nullable
+    private static MemoryPoolMXBean findTenuredPool() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.isUsageThresholdSupported() &&
+                    pool.isCollectionUsageThresholdSupported()) {
+                log.debug("Heap usage is measured after collection of pool: {}", pool.getName());
+                return pool;
+            }
+        }
+        log.warn("Tenured heap pool not found, heap usage includes uncollected garbage");
+        return null;
+    }
+
+    void start(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::sample, 0, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage collected = tenuredPool == null ? null : tenuredPool.getCollectionUsage();
+        if (collected == null) {
+            usagePercent = percent(heap.getUsed(), heap.getMax());
+        } else {
+            // max of pool can be undefined
+            usagePercent = percent(collected.getUsed(), collected.getMax() > 0 ? collected.getMax() : heap.getMax());
+        }
+    }
+
+    private static int percent(long used, long max) {
+        // max heap can be undefined
+        return max > 0 ? (int) (used * 100 / max) : 0;
+    }
+
+    /**
+     * Usage of tenured pool after collection in percents of pool max, or heap usage in percents of max heap if
+     * JVM has no such pool, as of last sample.
+     */
+    int getUsagePercent() {
+        return usagePercent;
+    }
+}
@@ -0,0 +1,49 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.Lambda;
+
+import javax.annotation.Nullable;
+
+/**
+ * Lambda found in classpath. Lambda class is loaded lazily on first instance creation.
+ */
+class LambdaDescriptor {
+
+    private final String name;
+    private final String className;
+    private final ClassLoader classLoader;
+    @Nullable
+    private volatile Class<? extends Lambda> lambdaClass;
+
+    LambdaDescriptor(String name, String className, ClassLoader classLoader) {
+        this.name = name;
+        this.className = className;
+        this.classLoader = classLoader;
+    }
+
+    LambdaDescriptor(String name, Class<? extends Lambda> lambdaClass) {
+        this(name, lambdaClass.getName(), lambdaClass.getClassLoader());
+        this.lambdaClass = lambdaClass;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    Class<? extends Lambda> getLambdaClass() throws ClassNotFoundException {
+        Class<? extends Lambda> result = lambdaClass;
+        if (result == null) {
+            result = Class.forName(className, true, classLoader).asSubclass(Lambda.class);
+            lambdaClass = result;
+        }
+        return result;
+    }
+}
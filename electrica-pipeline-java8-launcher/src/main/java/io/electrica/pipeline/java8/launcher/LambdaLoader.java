@@ -1,51 +1,316 @@
 package io.electrica.pipeline.java8.launcher;
 
 import io.electrica.pipeline.java8.spi.Lambda;
+import io.electrica.pipeline.java8.spi.LambdaName;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
 import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static java.util.Objects.isNull;
 
+/**
+ * Find lambdas available in classpath or in lambdas directory.
+ * <p>
+ * Lambdas listed in build-time index (see {@link LambdaName}) are registered by name without loading their
+ * classes. Other lambdas registered as {@link Lambda} services are instantiated to get their names.
+ * <p>
+ * Each jar of lambdas directory is loaded by own class loader, so lambdas are isolated from each other. Class
+ * loaders delegate to parent first, so SPI, SDK and other libraries provided by launcher are loaded once and
+ * shared, regardless of copies bundled into lambda jars. Libraries placed into {@link #SHARED_LIBS_DIR}
+ * subdirectory are loaded once as well by class loader shared by all lambda jars.
+ * <p>
+ * Libraries bundled into several lambda jars are detected by Maven coordinates of bundled {@code pom.properties}.
+ * Packages, that are bundled identically into all lambda jars containing them together with the same version of
+ * some library, are loaded once by {@link BundledLibraryClassLoader} shared by lambda jars. Libraries bundled
+ * into several lambda jars, but in different builds, are loaded by each jar and reported, so they can be moved to
+ * {@link #SHARED_LIBS_DIR} subdirectory.
+ */
 @Slf4j
 class LambdaLoader {
 
+    private static final String SERVICE_RESOURCE = "META-INF/services/" + Lambda.class.getName();
+    private static final String SHARED_LIBS_DIR = "shared";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String METADATA_DIR = "META-INF/";
+    private static final String MAVEN_METADATA_PREFIX = METADATA_DIR + "maven/";
+    private static final String MAVEN_PROPERTIES_SUFFIX = "/pom.properties";
+
     private LambdaLoader() {
     }
 
-    static List<Lambda> load() {
-        Map<String, Lambda> lambdas = new HashMap<>();
-        for (Lambda lambda : ServiceLoader.load(Lambda.class)) {
-            String name = lambda.getName();
-            checkArgument(
-                    !isNullOrEmpty(name),
-                    "Lambda name cannot be null: %s",
-                    lambda.getClass().getName()
+    /**
+     * Load lambdas from specified directory or from launcher classpath, if directory isn't specified.
+     */
+    static List<LambdaDescriptor> load(@Nullable Path lambdasDir) throws IOException {
+        Map<String, LambdaDescriptor> lambdas = new HashMap<>();
+        ClassLoader launcherClassLoader = LambdaLoader.class.getClassLoader();
+        if (lambdasDir == null) {
+            loadFrom(lambdas, launcherClassLoader, launcherClassLoader::getResources);
+        } else {
+            List<Path> sharedJars = listJars(lambdasDir.resolve(SHARED_LIBS_DIR));
+            ClassLoader sharedClassLoader = newClassLoader(sharedJars, launcherClassLoader);
+            List<Path> lambdaJars = listJars(lambdasDir);
+            ClassLoader bundledLibraryClassLoader = newBundledLibraryClassLoader(
+                    sharedJars,
+                    lambdaJars,
+                    sharedClassLoader
             );
-            Lambda old = lambdas.put(name, lambda);
-            checkArgument(isNull(old), "Duplicate lambda for name: %s", name);
+            for (Path jar : lambdaJars) {
+                URLClassLoader classLoader = newClassLoader(
+                        Collections.singletonList(jar),
+                        bundledLibraryClassLoader
+                );
+                // look up resources of lambda jar only, not of parents
+                loadFrom(lambdas, classLoader, classLoader::findResources);
+                log.debug("Loaded lambda jar: {}", jar);
+            }
         }
 
-        // initialize lambdas
-        List<Lambda> result = lambdas.values().stream()
-                .sorted(Comparator.comparing(Lambda::getName))
+        List<LambdaDescriptor> result = lambdas.values().stream()
+                .sorted(Comparator.comparing(LambdaDescriptor::getName))
                 .collect(Collectors.toList());
 
-
         log.info(
                 "Successfully loaded following lambdas: [{}]",
                 result.stream()
-                        .map(Lambda::getName)
+                        .map(LambdaDescriptor::getName)
                         .collect(Collectors.joining(", "))
         );
 
         return result;
     }
 
-    static Lambda newInstanceOf(Lambda source) throws Exception {
-        return source.getClass().newInstance();
+    private static void loadFrom(
+            Map<String, LambdaDescriptor> lambdas,
+            ClassLoader classLoader,
+            ResourceFinder resourceFinder
+    ) throws IOException {
+        Set<String> indexedClassNames = new HashSet<>();
+        for (URL url : Collections.list(resourceFinder.find(LambdaName.INDEX_RESOURCE))) {
+            Properties index = new Properties();
+            try (InputStream in = url.openStream()) {
+                index.load(in);
+            }
+            for (String name : index.stringPropertyNames()) {
+                String className = index.getProperty(name);
+                register(lambdas, new LambdaDescriptor(name, className, classLoader));
+                indexedClassNames.add(className);
+            }
+        }
+
+        // lambdas built without index
+        for (String className : readServiceClassNames(resourceFinder)) {
+            if (!indexedClassNames.contains(className)) {
+                Lambda lambda = newInstanceOf(className, classLoader);
+                register(lambdas, new LambdaDescriptor(lambda.getName(), lambda.getClass()));
+            }
+        }
+    }
+
+    /**
+     * Create class loader of packages bundled identically into several lambda jars. Package is shared, if all lambda
+     * jars containing it have the same entries of package and bundle the same version of some library, that isn't
+     * provided by shared jars. Package entries are compared by size and checksum of jar directory, so jar contents
+     * aren't read. Libraries bundled into several lambda jars, but not shared, are reported.
+     */
+    private static ClassLoader newBundledLibraryClassLoader(
+            List<Path> sharedJars,
+            List<Path> lambdaJars,
+            ClassLoader parent
+    ) throws IOException {
+        Set<String> sharedLibraries = new HashSet<>();
+        for (Path jar : sharedJars) {
+            sharedLibraries.addAll(readJar(jar).libraries);
+        }
+        Map<Path, JarContent> contents = new LinkedHashMap<>();
+        Map<String, List<Path>> packageJars = new HashMap<>();
+        Map<String, List<Path>> libraryJars = new TreeMap<>();
+        for (Path jar : lambdaJars) {
+            JarContent content = readJar(jar);
+            contents.put(jar, content);
+            for (String packageName : content.packages.keySet()) {
+                packageJars.computeIfAbsent(packageName, key -> new ArrayList<>()).add(jar);
+            }
+            for (String library : content.libraries) {
+                if (!sharedLibraries.contains(library)) {
+                    libraryJars.computeIfAbsent(library, key -> new ArrayList<>()).add(jar);
+                }
+            }
+        }
+
+        Set<String> packages = new HashSet<>();
+        Set<Path> jars = new LinkedHashSet<>();
+        Set<String> libraries = new HashSet<>();
+        packageJars.forEach((packageName, containingJars) -> {
+            if (containingJars.size() < 2) {
+                return;
+            }
+            Map<String, String> entries = contents.get(containingJars.get(0)).packages.get(packageName);
+            Set<String> commonLibraries = new HashSet<>(libraryJars.keySet());
+            for (Path jar : containingJars) {
+                JarContent content = contents.get(jar);
+                if (!entries.equals(content.packages.get(packageName))) {
+                    return;
+                }
+                commonLibraries.retainAll(content.libraries);
+            }
+            if (!commonLibraries.isEmpty()) {
+                packages.add(packageName);
+                jars.addAll(containingJars);
+                libraries.addAll(commonLibraries);
+            }
+        });
+
+        libraryJars.forEach((library, containingJars) -> {
+            if (containingJars.size() < 2) {
+                return;
+            }
+            List<Path> jarNames = containingJars.stream().map(Path::getFileName).collect(Collectors.toList());
+            if (libraries.contains(library)) {
+                log.info("Library {} is loaded once for lambda jars {}", library, jarNames);
+            } else {
+                log.info("Library {} is loaded by each of lambda jars {}, consider to move it to '{}' directory",
+                        library, jarNames, SHARED_LIBS_DIR);
+            }
+        });
+        log.debug("Packages loaded once for lambda jars: {}", packages.size());
+
+        URL[] urls = new URL[jars.size()];
+        int i = 0;
+        for (Path jar : jars) {
+            urls[i++] = jar.toUri().toURL();
+        }
+        return AccessController.doPrivileged((PrivilegedAction<ClassLoader>) () ->
+                new BundledLibraryClassLoader(urls, packages, parent)
+        );
+    }
+
+    /**
+     * Read Maven coordinates of libraries, that specified jar contains, and its package entries from jar directory.
+     */
+    private static JarContent readJar(Path jar) throws IOException {
+        JarContent result = new JarContent();
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            for (JarEntry entry : Collections.list(jarFile.entries())) {
+                String name = entry.getName();
+                if (name.startsWith(MAVEN_METADATA_PREFIX) && name.endsWith(MAVEN_PROPERTIES_SUFFIX)) {
+                    Properties properties = new Properties();
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        properties.load(in);
+                    }
+                    result.libraries.add(properties.getProperty("groupId") + ':' + properties.getProperty("artifactId")
+                            + ':' + properties.getProperty("version"));
+                }
+                String packageName = BundledLibraryClassLoader.packageOf(name);
+                if (packageName != null && !entry.isDirectory() && !name.startsWith(METADATA_DIR)) {
+                    // entry of unknown checksum doesn't match entries of other jars
+                    String signature = entry.getCrc() < 0 ? jar.toString() : entry.getSize() + ":" + entry.getCrc();
+                    result.packages.computeIfAbsent(packageName, key -> new HashMap<>()).put(name, signature);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<Path> listJars(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files
+                    .filter(file -> file.toString().endsWith(JAR_EXTENSION) && Files.isRegularFile(file))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static URLClassLoader newClassLoader(List<Path> jars, ClassLoader parent) throws IOException {
+        URL[] urls = new URL[jars.size()];
+        for (int i = 0; i < urls.length; i++) {
+            urls[i] = jars.get(i).toUri().toURL();
+        }
+        return AccessController.doPrivileged((PrivilegedAction<URLClassLoader>) () ->
+                new URLClassLoader(urls, parent)
+        );
+    }
+
+    private static void register(Map<String, LambdaDescriptor> lambdas, LambdaDescriptor descriptor) {
+        String name = descriptor.getName();
+        checkArgument(
+                !isNullOrEmpty(name),
+                "Lambda name cannot be null: %s",
+                descriptor.getClassName()
+        );
+        LambdaDescriptor old = lambdas.put(name, descriptor);
+        checkArgument(isNull(old), "Duplicate lambda for name: %s", name);
+    }
+
+    private static Set<String> readServiceClassNames(ResourceFinder resourceFinder) throws IOException {
+        Set<String> result = new LinkedHashSet<>();
+        for (URL url : Collections.list(resourceFinder.find(SERVICE_RESOURCE))) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)
+            )) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int commentIndex = line.indexOf('#');
+                    String className = (commentIndex < 0 ? line : line.substring(0, commentIndex)).trim();
+                    if (!className.isEmpty()) {
+                        result.add(className);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Lambda newInstanceOf(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, true, classLoader).asSubclass(Lambda.class).newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Can't instantiate lambda: " + className, e);
+        }
+    }
+
+    static Lambda newInstanceOf(LambdaDescriptor descriptor) throws Exception {
+        Lambda lambda = descriptor.getLambdaClass().newInstance();
+        checkArgument(
+                descriptor.getName().equals(lambda.getName()),
+                "Lambda name %s differs from indexed one: %s",
+                lambda.getName(),
+                descriptor.getName()
+        );
+        return lambda;
+    }
+
+    private static class JarContent {
+
+        // Maven coordinates with version
+        private final Set<String> libraries = new HashSet<>();
+        // entry signatures by entry name by package
+        private final Map<String, Map<String, String>> packages = new HashMap<>();
+    }
+
+    @FunctionalInterface
+    private interface ResourceFinder {
+        Enumeration<URL> find(String name) throws IOException;
     }
 }
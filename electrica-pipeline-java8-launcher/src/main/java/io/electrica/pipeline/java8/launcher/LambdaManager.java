@@ -1,17 +1,25 @@
 package io.electrica.pipeline.java8.launcher;
 
+import io.electrica.pipeline.java8.spi.AsyncLambda;
 import io.electrica.pipeline.java8.spi.Lambda;
+import io.electrica.pipeline.java8.spi.MessageSpool;
 import io.electrica.sdk.java8.api.Electrica;
-import io.electrica.sdk.java8.api.http.HttpModule;
-import io.electrica.sdk.java8.core.SingleInstanceHttpModule;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 @Slf4j
@@ -19,96 +27,278 @@ class LambdaManager {
 
     private static final long AWAIT_STOP_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
     private static final long AWAIT_LAMBDA_STARTED_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+    private static final long IDLE_THREAD_KEEP_ALIVE = TimeUnit.MINUTES.toMillis(1);
 
-    private final Lambda sourceLambda;
+    private final LambdaDescriptor descriptor;
     private final boolean autoStart;
-    private final String accessKey;
-    @Nullable
-    private final String apiUrl;
+    private final int concurrency;
+    private final DefaultLambdaContext lambdaContext;
+    private final Function<String, Electrica> electricaFactory;
 
-    private final ExecutorService executor;
-    private Context context;
+    private final ThreadPoolExecutor executor;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private List<Context> contexts;
+    @Nullable
+    private Electrica electrica;
 
-    LambdaManager(Lambda sourceLambda, boolean autoStart, String accessKey, @Nullable String apiUrl) {
-        this.sourceLambda = sourceLambda;
+    /**
+     * Electrica instance created by specified factory is shared by all lambda instances and reused across
+     * lambda restarts, so warm connections survive. It closed on manager stop only.
+     */
+    LambdaManager(
+            LambdaDescriptor descriptor,
+            boolean autoStart,
+            int concurrency,
+            DefaultLambdaContext lambdaContext,
+            Function<String, Electrica> electricaFactory
+    ) {
+        checkArgument(concurrency > 0, "Lambda concurrency should be positive: %s", concurrency);
+        this.descriptor = descriptor;
         this.autoStart = autoStart;
-        this.accessKey = accessKey;
-        this.apiUrl = apiUrl;
-        executor = Executors.newSingleThreadExecutor(runnable -> {
-            Thread thread = new Thread(runnable, "manager-" + getName());
-            thread.setDaemon(true);
-            return thread;
-        });
+        this.concurrency = concurrency;
+        this.lambdaContext = lambdaContext;
+        this.electricaFactory = electricaFactory;
+        executor = new ThreadPoolExecutor(
+                concurrency,
+                concurrency,
+                IDLE_THREAD_KEEP_ALIVE,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                lambdaContext.getLauncherThreadFactoryProvider().newThreadFactory("manager-" + getName() + "-")
+        );
+        // async lambdas return threads to pool, so don't keep them idle
+        executor.allowCoreThreadTimeOut(true);
     }
 
     String getName() {
-        return sourceLambda.getName();
+        return descriptor.getName();
+    }
+
+    /**
+     * Threads currently running lambda code: lambda instances, tasks of threads created by lambda thread
+     * factories and SDK threads in lambda listeners wrapped by {@link DefaultLambdaContext#limit}.
+     */
+    Collection<Thread> getThreads() {
+        Set<Thread> result = new HashSet<>(threads);
+        result.addAll(lambdaContext.getThreads());
+        return result;
+    }
+
+    private synchronized Electrica getElectrica() {
+        if (electrica == null) {
+            electrica = electricaFactory.apply(getName());
+        }
+        return electrica;
     }
 
-    private Electrica createElectrica() {
-        HttpModule httpModule = apiUrl == null ?
-                new SingleInstanceHttpModule() :
-                new SingleInstanceHttpModule(apiUrl);
-        return Electrica.instance(httpModule, getName(), accessKey);
+    private synchronized void closeElectrica() {
+        if (electrica != null) {
+            lambdaContext.getDispatchers().release(electrica);
+            try {
+                electrica.close();
+            } catch (Exception e) {
+                log.error("Error closing electrica instance", e);
+            } finally {
+                electrica = null;
+            }
+        }
+    }
+
+    /**
+     * Execute specified lambda lifecycle phase and record it to lambda metrics.
+     */
+    private void runPhase(String phase, Phase action) throws Exception {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            action.run();
+            success = true;
+        } finally {
+            lambdaContext.getMetrics().record(phase, System.nanoTime() - start, success);
+        }
     }
 
     synchronized void startLambda() throws Exception {
-        if (context != null) {
+        if (contexts != null) {
             throw new IllegalStateException("Lambda already started: " + getName());
         }
-        Lambda lambda = LambdaLoader.newInstanceOf(sourceLambda);
-        Electrica electrica = createElectrica();
-        CountDownLatch lambdaStartedLatch = new CountDownLatch(1);
-        Future<Void> future = executor.submit(() -> {
-            try (MDC.MDCCloseable ignored = MDC.putCloseable("lambdaName", getName())) {
-                log.debug("Lambda starting initialization");
-                lambda.initialize(electrica);
-                lambdaStartedLatch.countDown();
-                log.debug("Lambda successfully finished initialization");
-                try {
-                    log.debug("Lambda starting main job");
-                    lambda.doWork(electrica);
-                    log.info("Lambda successfully finished main job");
-                } finally {
-                    log.debug("Lambda starting destroy");
-                    lambda.destroy(electrica);
-                    log.debug("Lambda successfully finished destroy");
+        runPhase("start", () -> {
+            contexts = new ArrayList<>(concurrency);
+            CountDownLatch lambdaStartedLatch = new CountDownLatch(concurrency);
+            AtomicReference<Throwable> initializationError = new AtomicReference<>();
+            boolean started = false;
+            try {
+                for (int i = 0; i < concurrency; i++) {
+                    contexts.add(startInstance(lambdaStartedLatch, initializationError));
                 }
-                return null;
+                boolean initialized = lambdaStartedLatch.await(AWAIT_LAMBDA_STARTED_TIMEOUT, TimeUnit.MILLISECONDS);
+                checkState(initialized, "Can't await lambda initialization");
+                if (initializationError.get() != null) {
+                    throw new IllegalStateException("Lambda initialization failed", initializationError.get());
+                }
+                started = true;
             } finally {
-                try {
-                    electrica.close();
-                } catch (Exception e) {
-                    log.error("Error closing electrica instance", e);
+                if (!started) {
+                    // fail fast, so lambda isn't left partially started
+                    stopInstances();
                 }
             }
         });
-        context = new Context(lambda, future, electrica);
-        boolean started = lambdaStartedLatch.await(AWAIT_LAMBDA_STARTED_TIMEOUT, TimeUnit.MILLISECONDS);
-        checkState(started, "Can't await lambda initialization");
+        MessageSpool spool = lambdaContext.getOpenSpool();
+        if (spool != null) {
+            log.info("Lambda {} has {} pending spool entries", getName(), spool.getPendingCount());
+        }
+        log.info("Started {} instance(s) of lambda: {}", concurrency, getName());
+    }
+
+    /**
+     * Start lambda instance, that counts down specified latch once its initialization finished, successfully or
+     * not. Initialization error is reported before latch counted down.
+     */
+    private Context startInstance(
+            CountDownLatch lambdaStartedLatch,
+            AtomicReference<Throwable> initializationError
+    ) throws Exception {
+        Lambda lambda = LambdaLoader.newInstanceOf(descriptor);
+        lambda.setContext(lambdaContext);
+        Electrica electrica = getElectrica();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> runInLambdaThread(future, () -> {
+            log.debug("Lambda starting initialization");
+            try {
+                runPhase("initialize", () -> lambda.initialize(electrica));
+            } catch (Throwable e) {
+                initializationError.compareAndSet(null, e);
+                future.completeExceptionally(e);
+                return;
+            } finally {
+                lambdaStartedLatch.countDown();
+            }
+            log.debug("Lambda successfully finished initialization");
+            if (lambda instanceof AsyncLambda) {
+                startAsyncWork((AsyncLambda) lambda, electrica, future);
+                return;
+            }
+            try {
+                log.debug("Lambda starting main job");
+                runPhase("doWork", () -> lambda.doWork(electrica));
+                log.info("Lambda successfully finished main job");
+            } finally {
+                destroy(lambda, electrica);
+            }
+            future.complete(null);
+        }));
+        return new Context(lambda, future);
+    }
+
+    /**
+     * Start main job of async lambda and release current thread. Destroy is executed by pool thread on main job
+     * completion.
+     */
+    private void startAsyncWork(AsyncLambda lambda, Electrica electrica, CompletableFuture<Void> future) {
+        log.debug("Lambda starting main job asynchronously");
+        long start = System.nanoTime();
+        CompletionStage<Void> work;
+        try {
+            work = lambda.doWorkAsync(electrica);
+        } catch (Exception e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            work = failed;
+        }
+        work.whenComplete((ignored, error) -> {
+            lambdaContext.getMetrics().record("doWork", System.nanoTime() - start, error == null);
+            executor.execute(() -> runInLambdaThread(future, () -> {
+                if (error == null) {
+                    log.info("Lambda successfully finished main job");
+                }
+                destroy(lambda, electrica);
+                if (error == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(error);
+                }
+            }));
+        });
+    }
+
+    private void destroy(Lambda lambda, Electrica electrica) throws Exception {
+        log.debug("Lambda starting destroy");
+        runPhase("destroy", () -> lambda.destroy(electrica));
+        log.debug("Lambda successfully finished destroy");
+    }
+
+    /**
+     * Run lambda code in current pool thread. Future is completed exceptionally if action fails, otherwise action
+     * is responsible for completing it.
+     */
+    private void runInLambdaThread(CompletableFuture<Void> future, Phase action) {
+        Thread thread = Thread.currentThread();
+        // lambda libraries may look up classes and resources by context class loader
+        thread.setContextClassLoader(descriptor.getClassLoader());
+        threads.add(thread);
+        try (MDC.MDCCloseable ignored = MDC.putCloseable("lambdaName", getName())) {
+            action.run();
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            threads.remove(thread);
+        }
     }
 
     synchronized void stopLambda() throws Exception {
-        if (context != null) {
+        if (contexts != null) {
+            runPhase("stop", this::stopInstances);
+        }
+    }
+
+    /**
+     * Signal started instances to stop and await them. Shared objects are closed only if all instances stopped,
+     * as hung instance may still use them.
+     */
+    private void stopInstances() throws Exception {
+        for (Context context : contexts) {
             if (!context.getFuture().isDone()) {
                 try {
                     context.getLambda().onStopSignal();
                 } catch (Exception e) {
-                    log.error("Error handling stop for lambda: " + getName(), e);
+                    log.error("Error handling stop for lambda: {}", getName(), e);
                 }
             }
+        }
 
-            try {
-                context.getFuture().get(AWAIT_STOP_TIMEOUT, TimeUnit.MILLISECONDS);
-            } catch (ExecutionException e) {
-                log.error("Error executing lambda: " + getName(), e);
-            } catch (TimeoutException e) {
-                context.getElectrica().close();
-                log.error("Cannot await lambda: {}. Restart may be impossible", getName());
-            } finally {
-                context = null;
+        // the same deadline for all instances, as they got stop signal at the same time
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT_STOP_TIMEOUT);
+        boolean stopped = true;
+        try {
+            for (Context context : contexts) {
+                stopped &= awaitStopped(context, deadline);
             }
+        } finally {
+            contexts = null;
+            if (stopped) {
+                lambdaContext.closeShared();
+            } else {
+                log.warn("Shared objects of lambda {} are left open, as its instances still run", getName());
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} if instance is still running after deadline
+     */
+    private boolean awaitStopped(Context context, long deadline) throws Exception {
+        try {
+            context.getFuture().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            log.error("Error executing lambda: {}", getName(), e);
+        } catch (TimeoutException e) {
+            // drop shared instance to release hung lambda, new one will be created on next start
+            closeElectrica();
+            log.error("Cannot await lambda: {}. Restart may be impossible", getName());
+            return false;
         }
+        return true;
     }
 
     void start() throws Exception {
@@ -118,14 +308,23 @@ class LambdaManager {
     }
 
     void stop() throws Exception {
-        stopLambda();
+        try {
+            stopLambda();
+        } finally {
+            closeElectrica();
+            lambdaContext.closeSpool();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Phase {
+        void run() throws Exception;
     }
 
     @Getter
     @AllArgsConstructor
     private static class Context {
         private final Lambda lambda;
-        private final Future<Void> future;
-        private final Electrica electrica;
+        private final CompletableFuture<Void> future;
     }
 }
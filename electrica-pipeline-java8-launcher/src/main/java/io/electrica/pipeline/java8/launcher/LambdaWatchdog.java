@@ -0,0 +1,256 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Periodically samples CPU time and state of lambda threads, see {@link LambdaManager#getThreads()}, to report CPU
+ * share of each lambda and flag lambdas that are stalled while they are still running:
+ * <ul>
+ * <li>blocked - waiting for the same monitor longer than stall threshold;</li>
+ * <li>spinning - burning whole core longer than stall threshold, e.g. endless loop or busy wait.</li>
+ * </ul>
+ * Stalled thread is logged with its stack trace once per stall. Waiting on latches, queues or I/O is regular idle
+ * state of lambda, so it isn't flagged. Threads without CPU time support, e.g. virtual ones, aren't sampled.
+ * <p>
+ * Lambda threads created without lambda thread factories, and SDK threads in listeners not wrapped by
+ * {@link io.electrica.pipeline.java8.spi.LambdaContext#limit}, aren't known to launcher, so they aren't sampled.
+ */
+@Slf4j
+class LambdaWatchdog implements LambdaWatchdogMXBean {
+
+    private static final long SAMPLE_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final double SPIN_CPU_RATIO = 0.9;
+    private static final int LOG_STACK_DEPTH = 32;
+    private static final String CPU_PERCENT_GAUGE = "cpuPercent";
+    private static final String STALLED_THREADS_GAUGE = "stalledThreads";
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final List<LambdaManager> managers;
+    private final long stallThresholdNanos;
+    private final int processors = Runtime.getRuntime().availableProcessors();
+
+    // guarded by this
+    private Map<Long, ThreadSample> samples = new HashMap<>();
+    private final ConcurrentMap<String, LambdaUsage> usages = new ConcurrentHashMap<>();
+
+    /**
+     * @param stallThreshold time in milliseconds, after which blocked or spinning thread is flagged
+     */
+    LambdaWatchdog(List<LambdaManager> managers, MetricsRegistry metricsRegistry, long stallThreshold) {
+        checkArgument(stallThreshold > 0, "Stall threshold should be positive: %s", stallThreshold);
+        this.managers = managers;
+        this.stallThresholdNanos = TimeUnit.MILLISECONDS.toNanos(stallThreshold);
+        for (LambdaManager manager : managers) {
+            LambdaUsage usage = new LambdaUsage();
+            usages.put(manager.getName(), usage);
+            LambdaMetrics metrics = metricsRegistry.forLambda(manager.getName());
+            metrics.gauge(CPU_PERCENT_GAUGE, () -> usage.cpuPercent);
+            metrics.gauge(STALLED_THREADS_GAUGE, () -> usage.stalledThreads);
+        }
+    }
+
+    void start(ScheduledExecutorService scheduler) {
+        if (!threadBean.isThreadCpuTimeSupported()) {
+            log.warn("Thread CPU time isn't supported by current JVM, lambda watchdog disabled");
+            return;
+        }
+        if (!threadBean.isThreadCpuTimeEnabled()) {
+            threadBean.setThreadCpuTimeEnabled(true);
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    this,
+                    new ObjectName(MetricsRegistry.JMX_DOMAIN + ":type=Watchdog")
+            );
+        } catch (Exception e) {
+            log.warn("Can't register JMX bean of lambda watchdog", e);
+        }
+        scheduler.scheduleWithFixedDelay(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void sample() {
+        try {
+            long now = System.nanoTime();
+            Map<Long, ThreadSample> next = new HashMap<>();
+            for (LambdaManager manager : managers) {
+                long cpuNanos = 0;
+                long wallNanos = 0;
+                int stalled = 0;
+                for (Thread thread : manager.getThreads()) {
+                    long id = thread.getId();
+                    long cpuTime = threadBean.getThreadCpuTime(id);
+                    ThreadInfo info = threadBean.getThreadInfo(id);
+                    if (cpuTime < 0 || info == null) {
+                        // not supported or terminated
+                        continue;
+                    }
+                    ThreadSample previous = samples.get(id);
+                    ThreadSample sample = previous == null ?
+                            new ThreadSample(now, cpuTime, info) :
+                            previous.next(now, cpuTime, info);
+                    next.put(id, sample);
+                    if (previous != null) {
+                        cpuNanos += sample.cpuNanos;
+                        wallNanos = Math.max(wallNanos, sample.wallNanos);
+                    }
+                    if (sample.isStalled()) {
+                        stalled++;
+                        if (!sample.reported) {
+                            sample.reported = true;
+                            logStall(manager.getName(), sample);
+                        }
+                    }
+                }
+                LambdaUsage usage = usages.get(manager.getName());
+                usage.cpuPercent = wallNanos > 0 ? cpuNanos * 100 / (wallNanos * processors) : 0;
+                usage.stalledThreads = stalled;
+            }
+            samples = next;
+        } catch (Exception e) {
+            log.error("Error sampling lambda threads", e);
+        }
+    }
+
+    private void logStall(String lambdaName, ThreadSample sample) {
+        ThreadInfo info = threadBean.getThreadInfo(sample.threadId, LOG_STACK_DEPTH);
+        if (info != null) {
+            StringBuilder sb = new StringBuilder();
+            appendThread(sb, info, sample);
+            log.warn("Lambda {} thread is {} for {} ms:\n{}", lambdaName, sample.stall,
+                    TimeUnit.NANOSECONDS.toMillis(sample.wallTime - sample.stallSince), sb);
+        }
+    }
+
+    @Override
+    public int getStalledThreads() {
+        int result = 0;
+        for (LambdaUsage usage : usages.values()) {
+            result += usage.stalledThreads;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String dumpThreads() {
+        StringBuilder sb = new StringBuilder();
+        for (LambdaManager manager : managers) {
+            LambdaUsage usage = usages.get(manager.getName());
+            sb.append(manager.getName())
+                    .append(" cpuPercent=").append(usage.cpuPercent)
+                    .append(" stalledThreads=").append(usage.stalledThreads)
+                    .append('\n');
+            for (Thread thread : manager.getThreads()) {
+                ThreadInfo info = threadBean.getThreadInfo(thread.getId(), Integer.MAX_VALUE);
+                if (info != null) {
+                    appendThread(sb, info, samples.get(thread.getId()));
+                }
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private void appendThread(StringBuilder sb, ThreadInfo info, @Nullable ThreadSample sample) {
+        sb.append('"').append(info.getThreadName()).append("\" ").append(info.getThreadState());
+        if (info.getLockName() != null) {
+            sb.append(" on ").append(info.getLockName());
+        }
+        if (info.getLockOwnerName() != null) {
+            sb.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+        }
+        if (sample != null) {
+            sb.append(" cpuPercent=").append(sample.wallNanos > 0 ? sample.cpuNanos * 100 / sample.wallNanos : 0);
+            if (sample.stall != null) {
+                sb.append(' ').append(sample.stall);
+            }
+        }
+        sb.append('\n');
+        for (StackTraceElement element : info.getStackTrace()) {
+            sb.append("\tat ").append(element).append('\n');
+        }
+    }
+
+    private enum Stall {
+        BLOCKED, SPINNING
+    }
+
+    private static class LambdaUsage {
+        // percent of all processors of node
+        private volatile long cpuPercent;
+        private volatile int stalledThreads;
+    }
+
+    /**
+     * Last sample of lambda thread, with CPU usage since previous sample.
+     */
+    private class ThreadSample {
+        private final long threadId;
+        private final long wallTime;
+        private final long cpuTime;
+        private final Thread.State state;
+        private final long blockedCount;
+        private final long wallNanos;
+        private final long cpuNanos;
+        @Nullable
+        private final Stall stall;
+        private final long stallSince;
+        private boolean reported;
+
+        ThreadSample(long now, long cpuTime, ThreadInfo info) {
+            this.threadId = info.getThreadId();
+            this.wallTime = now;
+            this.cpuTime = cpuTime;
+            this.state = info.getThreadState();
+            this.blockedCount = info.getBlockedCount();
+            this.wallNanos = 0;
+            this.cpuNanos = 0;
+            this.stall = null;
+            this.stallSince = now;
+        }
+
+        private ThreadSample(ThreadSample previous, long now, long cpuTime, ThreadInfo info) {
+            this.threadId = previous.threadId;
+            this.wallTime = now;
+            this.cpuTime = cpuTime;
+            this.state = info.getThreadState();
+            this.blockedCount = info.getBlockedCount();
+            this.wallNanos = now - previous.wallTime;
+            this.cpuNanos = cpuTime - previous.cpuTime;
+            if (state == Thread.State.BLOCKED
+                    && previous.state == Thread.State.BLOCKED
+                    && blockedCount == previous.blockedCount) {
+                // the same blocking since previous sample
+                stall = Stall.BLOCKED;
+            } else if (cpuNanos >= wallNanos * SPIN_CPU_RATIO) {
+                stall = Stall.SPINNING;
+            } else {
+                stall = null;
+            }
+            boolean sameStall = stall != null && stall == previous.stall;
+            this.stallSince = sameStall ? previous.stallSince : previous.wallTime;
+            this.reported = sameStall && previous.reported;
+        }
+
+        ThreadSample next(long now, long cpuTime, ThreadInfo info) {
+            return new ThreadSample(this, now, cpuTime, info);
+        }
+
+        boolean isStalled() {
+            return stall != null && wallTime - stallSince >= stallThresholdNanos;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package io.electrica.pipeline.java8.launcher;
+
+/**
+ * JMX view of {@link LambdaWatchdog}.
+ */
+public interface LambdaWatchdogMXBean {
+
+    /**
+     * Number of lambda threads, that are blocked or spinning longer than stall threshold.
+     */
+    int getStalledThreads();
+
+    /**
+     * Stack traces of all lambda threads with their state and CPU share.
+     */
+    String dumpThreads();
+}
@@ -0,0 +1,52 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.MessageSpool;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+/**
+ * Spool of lambda opened on first request, so lambdas that don't use spool neither create files nor map segments.
+ */
+class LazyMessageSpool {
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // guarded by this
+    @Nullable
+    private MessageSpool spool;
+
+    LazyMessageSpool(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    synchronized MessageSpool get() {
+        if (spool == null) {
+            try {
+                spool = MessageSpool.open(directory, segmentSize);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Can't open spool: " + directory, e);
+            }
+        }
+        return spool;
+    }
+
+    /**
+     * @return {@code null} if spool hasn't been requested yet
+     */
+    @Nullable
+    synchronized MessageSpool getIfOpen() {
+        return spool;
+    }
+
+    synchronized void close() {
+        if (spool != null) {
+            spool.close();
+            spool = null;
+        }
+    }
+}
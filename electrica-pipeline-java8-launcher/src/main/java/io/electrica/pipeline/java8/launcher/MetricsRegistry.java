@@ -0,0 +1,102 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.LambdaMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Launcher-wide registry of per lambda operation metrics and gauges.
+ * <p>
+ * Each operation is exposed as {@link OperationMetricsMXBean}, each gauge as {@link GaugeMetricsMXBean} over JMX,
+ * and both as line of text report.
+ */
+@Slf4j
+class MetricsRegistry {
+
+    static final String JMX_DOMAIN = "io.electrica.pipeline";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, OperationMetrics>> lambdas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, GaugeMetrics>> gauges = new ConcurrentHashMap<>();
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+    LambdaMetrics forLambda(String lambdaName) {
+        ConcurrentMap<String, OperationMetrics> operations =
+                lambdas.computeIfAbsent(lambdaName, name -> new ConcurrentHashMap<>());
+        ConcurrentMap<String, GaugeMetrics> lambdaGauges =
+                gauges.computeIfAbsent(lambdaName, name -> new ConcurrentHashMap<>());
+        return new LambdaMetrics() {
+            @Override
+            public void record(String operation, long durationNanos, boolean success) {
+                OperationMetrics metrics = operations.get(operation);
+                if (metrics == null) {
+                    metrics = operations.computeIfAbsent(
+                            operation,
+                            name -> register(new OperationMetrics(), lambdaName, "operation", name)
+                    );
+                }
+                metrics.record(durationNanos, success);
+            }
+
+            @Override
+            public void gauge(String name, LongSupplier value) {
+                lambdaGauges.computeIfAbsent(name, gauge -> register(new GaugeMetrics(), lambdaName, "gauge", gauge))
+                        .setSource(value);
+            }
+        };
+    }
+
+    private <T> T register(T metrics, String lambdaName, String kind, String name) {
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=Lambda" +
+                    ",lambda=" + ObjectName.quote(lambdaName) +
+                    "," + kind + "=" + ObjectName.quote(name));
+            mBeanServer.registerMBean(metrics, objectName);
+        } catch (Exception e) {
+            log.warn("Can't register JMX bean for lambda {}: {}.{}", kind, lambdaName, name, e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Text report with one line per lambda operation and gauge, latencies are in microseconds.
+     */
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, ConcurrentMap<String, OperationMetrics>> lambda : new TreeMap<>(lambdas).entrySet()) {
+            for (Map.Entry<String, OperationMetrics> operation : new TreeMap<>(lambda.getValue()).entrySet()) {
+                OperationMetrics metrics = operation.getValue();
+                LatencyHistogram.Snapshot latency = metrics.latencySnapshot();
+                sb.append(lambda.getKey()).append('.').append(operation.getKey())
+                        .append(" count=").append(metrics.getCount())
+                        .append(" errors=").append(metrics.getErrors())
+                        .append(" p50=").append(toMicros(latency.valueAt(50)))
+                        .append(" p90=").append(toMicros(latency.valueAt(90)))
+                        .append(" p99=").append(toMicros(latency.valueAt(99)))
+                        .append(" p999=").append(toMicros(latency.valueAt(99.9)))
+                        .append(" max=").append(toMicros(latency.max()))
+                        .append('\n');
+            }
+        }
+        for (Map.Entry<String, ConcurrentMap<String, GaugeMetrics>> lambda : new TreeMap<>(gauges).entrySet()) {
+            for (Map.Entry<String, GaugeMetrics> gauge : new TreeMap<>(lambda.getValue()).entrySet()) {
+                sb.append(lambda.getKey()).append('.').append(gauge.getKey())
+                        .append(" value=").append(gauge.getValue().getValue())
+                        .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,55 @@
+package io.electrica.pipeline.java8.launcher;
+
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * Local HTTP endpoint that serves text report of {@link MetricsRegistry} and stack traces of lambda threads by
+ * {@link LambdaWatchdog}.
+ */
+@Slf4j
+class MetricsServer {
+
+    private static final String METRICS_PATH = "/metrics";
+    private static final String THREADS_PATH = "/threads";
+
+    private final HttpServer server;
+
+    MetricsServer(MetricsRegistry registry, LambdaWatchdog watchdog, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        serveText(METRICS_PATH, registry::report);
+        serveText(THREADS_PATH, watchdog::dumpThreads);
+    }
+
+    private void serveText(String path, Supplier<String> text) {
+        server.createContext(path, exchange -> {
+            try {
+                byte[] body = text.get().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    void start() {
+        server.start();
+        log.info("Metrics available at: http://{}:{}{}, lambda threads at: {}",
+                server.getAddress().getHostString(), server.getAddress().getPort(), METRICS_PATH, THREADS_PATH);
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,65 @@
+package io.electrica.pipeline.java8.launcher;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Invocation counters and latency histogram of single lambda operation.
+ */
+class OperationMetrics implements OperationMetricsMXBean {
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    void record(long durationNanos, boolean success) {
+        count.increment();
+        if (!success) {
+            errors.increment();
+        }
+        latency.record(durationNanos);
+    }
+
+    LatencyHistogram.Snapshot latencySnapshot() {
+        return latency.snapshot();
+    }
+
+    private long latencyAt(double percentile) {
+        return TimeUnit.NANOSECONDS.toMicros(latency.snapshot().valueAt(percentile));
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return latencyAt(50);
+    }
+
+    @Override
+    public long getLatencyP90() {
+        return latencyAt(90);
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return latencyAt(99);
+    }
+
+    @Override
+    public long getLatencyP999() {
+        return latencyAt(99.9);
+    }
+
+    @Override
+    public long getLatencyMax() {
+        return latencyAt(100);
+    }
+}
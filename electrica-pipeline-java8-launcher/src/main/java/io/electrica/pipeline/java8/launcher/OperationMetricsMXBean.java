@@ -0,0 +1,21 @@
+package io.electrica.pipeline.java8.launcher;
+
+/**
+ * JMX view of single lambda operation metrics. All latencies are in microseconds.
+ */
+public interface OperationMetricsMXBean {
+
+    long getCount();
+
+    long getErrors();
+
+    long getLatencyP50();
+
+    long getLatencyP90();
+
+    long getLatencyP99();
+
+    long getLatencyP999();
+
+    long getLatencyMax();
+}
@@ -1,23 +1,34 @@
 package io.electrica.pipeline.java8.launcher;
 
+import ch.qos.logback.classic.LoggerContext;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
-import io.electrica.pipeline.java8.spi.Lambda;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.electrica.pipeline.java8.spi.LambdaParameters;
+import io.electrica.pipeline.java8.spi.Sharding;
+import io.electrica.pipeline.java8.spi.ThreadFactoryProvider;
+import io.electrica.sdk.java8.api.Electrica;
+import io.electrica.sdk.java8.api.http.HttpModule;
+import io.electrica.sdk.java8.core.SingleInstanceHttpModule;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.TimeUnit;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 /**
@@ -31,8 +42,26 @@ public class PipelineLauncher {
     private static final String UNKNOWN_VERSION = "unknown";
     private static final String PROGRAM_NAME = "electrica-pipeline-java8-launcher";
     private static final Pattern VERSION_PATTERN = Pattern.compile(".*" + PROGRAM_NAME + "-(?<version>.*)\\.jar!.*");
+    private static final int DEFAULT_CONCURRENCY = 1;
+    private static final String SPOOL_DIRECTORY = "spool";
+    private static final int SPOOL_SEGMENT_SIZE = 16 * 1024 * 1024;
+    // time to release resources after managers stopped, in seconds
+    private static final long SHUTDOWN_HOOK_EXTRA_TIMEOUT = 5;
 
-    public static void main(String[] args) throws InterruptedException {
+    public static void main(String[] args) throws InterruptedException, IOException {
+        run(args, null);
+    }
+
+    /**
+     * Run launcher until kill signal.
+     *
+     * @param electricaFactory factory of Electrica instances by lambda name, e.g. local stand-in, or {@code null}
+     *                         to connect to cluster specified by options
+     */
+    static void run(
+            String[] args,
+            @Nullable Function<String, Electrica> electricaFactory
+    ) throws InterruptedException, IOException {
         Config config = new Config();
         JCommander jCommander = JCommander.newBuilder()
                 .programName(PROGRAM_NAME)
@@ -57,28 +86,107 @@ public class PipelineLauncher {
                 log.info("Got kill signal");
                 processLatch.countDown();
                 try {
-                    boolean finished = processFinishedLatch.await(1, TimeUnit.MINUTES);
+                    boolean finished = processFinishedLatch.await(
+                            config.getStopTimeout() + SHUTDOWN_HOOK_EXTRA_TIMEOUT,
+                            TimeUnit.SECONDS
+                    );
                     if (!finished) {
                         log.error("Can't await graceful managers finish");
                     }
                 } catch (InterruptedException e) {
                     log.error("Got interrupted exception", e);
                 }
+                // flush events queued by async appender
+                ILoggerFactory loggerFactory = LoggerFactory.getILoggerFactory();
+                if (loggerFactory instanceof LoggerContext) {
+                    ((LoggerContext) loggerFactory).stop();
+                }
             }));
 
-            List<Lambda> lambdas = LambdaLoader.load();
-            List<LambdaManager> managers = createLambdaManagers(config, lambdas);
+            MetricsRegistry metricsRegistry = new MetricsRegistry();
 
-            startManagers(managers);
+            ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                    config.getSchedulerThreads(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("scheduler-%d")
+                            .setDaemon(true)
+                            .build()
+            );
+            HeapUsageMonitor heapUsageMonitor = new HeapUsageMonitor();
+            heapUsageMonitor.start(scheduler);
+
+            ShardLease shardLease = null;
+            Sharding sharding;
+            if (config.getShardLeaseDir() != null) {
+                shardLease = new ShardLease(Paths.get(config.getShardLeaseDir()), config.getShardCount());
+                shardLease.acquire(scheduler);
+                sharding = shardLease.getSharding();
+            } else {
+                sharding = new HashSharding(config.getShardIndex(), config.getShardCount());
+            }
+
+            List<LambdaDescriptor> lambdas = LambdaLoader.load(
+                    config.getLambdasDir() == null ? null : Paths.get(config.getLambdasDir())
+            );
+            ThreadFactoryProvider threadFactoryProvider = loadThreadFactoryProvider(config.getThreads());
+            log.info("Lambdas are run by {} threads", threadFactoryProvider.getName());
+            List<LambdaManager> managers = createLambdaManagers(
+                    config,
+                    lambdas,
+                    metricsRegistry,
+                    scheduler,
+                    heapUsageMonitor,
+                    sharding,
+                    new ChannelRegistry(config.getChannelCapacity()),
+                    new DispatcherRegistry(),
+                    threadFactoryProvider,
+                    electricaFactory == null ? createElectricaFactory(config) : electricaFactory
+            );
+            LambdaWatchdog watchdog = new LambdaWatchdog(
+                    managers,
+                    metricsRegistry,
+                    TimeUnit.SECONDS.toMillis(config.getStallThreshold())
+            );
+            watchdog.start(scheduler);
+            MetricsServer metricsServer = null;
+            if (config.getMetricsPort() != null) {
+                try {
+                    metricsServer = new MetricsServer(metricsRegistry, watchdog, config.getMetricsPort());
+                    metricsServer.start();
+                } catch (IOException e) {
+                    log.error("Error starting metrics server", e);
+                }
+            }
+
+            startManagers(managers, TimeUnit.SECONDS.toMillis(config.getStartTimeout()));
 
             // await kill signal
             processLatch.await();
-            stopManagers(managers);
+            stopManagers(managers, TimeUnit.SECONDS.toMillis(config.getStopTimeout()));
+            if (shardLease != null) {
+                // leave shards after managers stopped, so rest of launchers take over
+                shardLease.close();
+            }
+            scheduler.shutdownNow();
+            if (metricsServer != null) {
+                metricsServer.stop();
+            }
             processFinishedLatch.countDown();
         }
     }
 
-    private static List<LambdaManager> createLambdaManagers(Config config, List<Lambda> lambdas) {
+    private static List<LambdaManager> createLambdaManagers(
+            Config config,
+            List<LambdaDescriptor> lambdas,
+            MetricsRegistry metricsRegistry,
+            ScheduledExecutorService scheduler,
+            HeapUsageMonitor heapUsageMonitor,
+            Sharding sharding,
+            ChannelRegistry channels,
+            DispatcherRegistry dispatchers,
+            ThreadFactoryProvider threadFactoryProvider,
+            Function<String, Electrica> electricaFactory
+    ) {
         Set<String> autoStartLambdas = config.getAutoStartLambdas().stream()
                 .map(String::trim)
                 .collect(Collectors.toSet());
@@ -86,48 +194,172 @@ public class PipelineLauncher {
                 .map(String::trim)
                 .collect(Collectors.toSet());
         boolean startAll = autoStartLambdas.contains("*");
+        Map<String, Integer> concurrency = parseConcurrency(config.getConcurrency());
+        Map<String, Map<String, String>> parameters = parseParameters(config.getParameters());
+        Path dataDir = config.getDataDir() == null ? null : Paths.get(config.getDataDir());
 
         List<LambdaManager> managers = new ArrayList<>(lambdas.size());
-        for (Lambda lambda : lambdas) {
+        for (LambdaDescriptor lambda : lambdas) {
             String name = lambda.getName();
             boolean autoStart = startAll ?
                     !autoStartExcludeLambdas.contains(name) :
                     autoStartLambdas.contains(name);
-            managers.add(new LambdaManager(lambda, autoStart, config.getAccessKey(), config.getApiUrl()));
+            LazyMessageSpool spool = dataDir == null ?
+                    null :
+                    new LazyMessageSpool(dataDir.resolve(name).resolve(SPOOL_DIRECTORY), SPOOL_SEGMENT_SIZE);
+            LambdaParameters lambdaParameters =
+                    new LambdaParameters(parameters.getOrDefault(name, Collections.emptyMap()));
+            managers.add(new LambdaManager(
+                    lambda,
+                    autoStart,
+                    lambdaParameters.getInt(
+                            LambdaParameters.CONCURRENCY,
+                            concurrency.getOrDefault(name, DEFAULT_CONCURRENCY)
+                    ),
+                    new DefaultLambdaContext(
+                            metricsRegistry.forLambda(name),
+                            scheduler,
+                            threadFactoryProvider,
+                            spool,
+                            lambdaParameters,
+                            heapUsageMonitor,
+                            sharding,
+                            channels,
+                            dispatchers
+                    ),
+                    electricaFactory
+            ));
         }
         return managers;
     }
 
-    private static void startManagers(List<LambdaManager> managers) {
+    private static ThreadFactoryProvider loadThreadFactoryProvider(String name) {
+        for (ThreadFactoryProvider provider : ServiceLoader.load(
+                ThreadFactoryProvider.class,
+                PipelineLauncher.class.getClassLoader()
+        )) {
+            if (provider.getName().equals(name)) {
+                checkArgument(provider.isAvailable(), "Threads aren't supported by current JVM: %s", name);
+                return provider;
+            }
+        }
+        throw new IllegalArgumentException("Unknown threads: " + name);
+    }
+
+    /**
+     * Create factory of Electrica instances, each with own HTTP module, as SDK module serves single instance.
+     * Instance is reused by all instances and restarts of its lambda, see {@link LambdaManager}, but HTTP
+     * connections aren't shared between lambdas.
+     */
+    private static Function<String, Electrica> createElectricaFactory(Config config) {
+        String accessKey = config.getAccessKey();
+        String apiUrl = config.getApiUrl();
+        return name -> {
+            HttpModule httpModule = apiUrl == null ?
+                    new SingleInstanceHttpModule() :
+                    new SingleInstanceHttpModule(apiUrl);
+            return Electrica.instance(httpModule, name, accessKey);
+        };
+    }
+
+    private static Map<String, Integer> parseConcurrency(List<String> values) {
+        Map<String, Integer> result = new HashMap<>();
+        for (String value : values) {
+            int index = value.indexOf('=');
+            checkArgument(index > 0, "Wrong concurrency format, expected `name=count`: %s", value);
+            String name = value.substring(0, index).trim();
+            int count = Integer.parseInt(value.substring(index + 1).trim());
+            checkArgument(count > 0, "Lambda concurrency should be positive: %s", value);
+            result.put(name, count);
+        }
+        return result;
+    }
+
+    /**
+     * Parse parameters in format {@code lambda.key=value} to parameters by lambda name.
+     */
+    private static Map<String, Map<String, String>> parseParameters(List<String> values) {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        for (String value : values) {
+            int index = value.indexOf('=');
+            int keyIndex = value.indexOf('.');
+            checkArgument(
+                    keyIndex > 0 && index > keyIndex + 1,
+                    "Wrong parameter format, expected `lambda.key=value`: %s",
+                    value
+            );
+            String name = value.substring(0, keyIndex).trim();
+            String key = value.substring(keyIndex + 1, index).trim();
+            result.computeIfAbsent(name, n -> new HashMap<>()).put(key, value.substring(index + 1).trim());
+        }
+        return result;
+    }
+
+    private static void startManagers(List<LambdaManager> managers, long timeout) throws InterruptedException {
         if (log.isDebugEnabled()) {
             log.debug("Starting lambda managers..");
         }
-        int count = 0;
-        for (LambdaManager manager : managers) {
-            try {
-                manager.start();
-                count++;
-            } catch (Exception e) {
-                log.error("Error starting lambda manager: " + manager.getName(), e);
-            }
-        }
+        int count = runManagers(managers, "start", timeout, LambdaManager::start);
         log.info("Successfully started {}/{} lambda managers", count, managers.size());
     }
 
-    private static void stopManagers(List<LambdaManager> managers) {
+    private static void stopManagers(List<LambdaManager> managers, long timeout) throws InterruptedException {
         if (log.isDebugEnabled()) {
             log.debug("Stopping lambda managers..");
         }
-        int count = 0;
-        for (LambdaManager manager : managers) {
-            try {
-                manager.stop();
-                count++;
-            } catch (Exception e) {
-                log.error("Error stopping lambda manager: " + manager.getName(), e);
+        int count = runManagers(managers, "stop", timeout, LambdaManager::stop);
+        log.info("Successfully stopped {}/{} lambda managers", count, managers.size());
+    }
+
+    /**
+     * Run specified action for all managers concurrently and await them within one overall deadline.
+     *
+     * @return number of managers that successfully finished action in time
+     */
+    private static int runManagers(
+            List<LambdaManager> managers,
+            String actionName,
+            long timeout,
+            ManagerAction action
+    ) throws InterruptedException {
+        ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("launcher-" + actionName + "-%d")
+                .setDaemon(true)
+                .build()
+        );
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            Map<LambdaManager, Future<Long>> futures = new LinkedHashMap<>();
+            for (LambdaManager manager : managers) {
+                futures.put(manager, executor.submit(() -> {
+                    long start = System.nanoTime();
+                    action.run(manager);
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                }));
             }
+
+            int count = 0;
+            List<String> timings = new ArrayList<>(managers.size());
+            for (Map.Entry<LambdaManager, Future<Long>> entry : futures.entrySet()) {
+                String name = entry.getKey().getName();
+                try {
+                    long remaining = Math.max(deadline - System.nanoTime(), 0);
+                    long duration = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                    timings.add(name + "=" + duration + "ms");
+                    count++;
+                } catch (ExecutionException e) {
+                    timings.add(name + "=error");
+                    log.error("Error running {} for lambda manager: {}", actionName, name, e.getCause());
+                } catch (TimeoutException e) {
+                    timings.add(name + "=timeout");
+                    log.error("Cannot await {} of lambda manager: {}", actionName, name);
+                }
+            }
+            log.info("Lambda managers {} timings: [{}]", actionName, String.join(", ", timings));
+            return count;
+        } finally {
+            executor.shutdown();
         }
-        log.info("Successfully stopped {}/{} lambda managers", count, managers.size());
     }
 
     private static String getVersion() {
@@ -147,6 +379,11 @@ public class PipelineLauncher {
         return UNKNOWN_VERSION;
     }
 
+    @FunctionalInterface
+    private interface ManagerAction {
+        void run(LambdaManager manager) throws Exception;
+    }
+
     @Getter
     private static class Config {
 
@@ -157,6 +394,46 @@ public class PipelineLauncher {
         @Parameter(names = {"-u", "--url"}, description = "Electrica.io cluster api URL.")
         private String apiUrl;
 
+        @Nullable
+        @Parameter(
+                names = {"-l", "--lambdas-dir"},
+                description = "Directory with lambda jars. Each jar is loaded by isolated class loader, jars of " +
+                        "`shared` subdirectory are loaded once and shared by all lambdas. Lambdas are loaded from " +
+                        "launcher classpath by default."
+        )
+        private String lambdasDir;
+
+        @Nullable
+        @Parameter(
+                names = {"-d", "--data-dir"},
+                description = "Directory to keep lambda data between restarts, e.g. spool of accepted messages. " +
+                        "Each lambda gets own subdirectory. Data isn't kept by default."
+        )
+        private String dataDir;
+
+        @Parameter(
+                names = {"--shard-count"},
+                description = "Number of launchers that handle the same traffic, each handles messages of own shard " +
+                        "only. Max number of launchers with --shard-lease-dir option."
+        )
+        private int shardCount = 1;
+
+        @Parameter(
+                names = {"--shard-index"},
+                description = "Shard of this launcher, from 0 to shard count exclusive. Ignored with " +
+                        "--shard-lease-dir option."
+        )
+        private int shardIndex;
+
+        @Nullable
+        @Parameter(
+                names = {"--shard-lease-dir"},
+                description = "Directory to coordinate shards of launchers on the same host by file locks. Shard " +
+                        "index and count are assigned by number of live launchers and rebalanced when launcher " +
+                        "joins or leaves."
+        )
+        private String shardLeaseDir;
+
         @Parameter(
                 names = {"-s", "--start"},
                 description = "Names of lambdas to auto-start. Sign `*` means all. Nothing started by default. " +
@@ -171,10 +448,73 @@ public class PipelineLauncher {
         )
         private List<String> autoStartExcludeLambdas = new ArrayList<>();
 
-        @Parameter(names = {"-p", "--parameter"}, description = "Lambda customization parameters. Option can be set " +
-                "few times.")
+        @Parameter(
+                names = {"-c", "--concurrency"},
+                description = "Number of concurrent instances of lambda in format `name=count`. One instance by " +
+                        "default. Option can be set few times."
+        )
+        private List<String> concurrency = new ArrayList<>();
+
+        @Parameter(
+                names = {"-p", "--parameter"},
+                description = "Lambda parameter in format `lambda.key=value`. Reserved keys set lambda budgets: " +
+                        "`concurrency` overrides -c option, `maxInFlight`, `queueDepth` and `queueTimeout` in " +
+                        "milliseconds limit listener messages, `heapSoftCap` is tenured pool usage percent after " +
+                        "GC to shed messages above, `inputChannel` and `outputChannel` wire stage lambdas. Option " +
+                        "can be set few times."
+        )
         private List<String> parameters = new ArrayList<>();
 
+        @Parameter(
+                names = {"--channel-capacity"},
+                description = "Capacity of in-process channels between stage lambdas, rounded up to power of two. " +
+                        "Full channel makes producers wait."
+        )
+        private int channelCapacity = 1024;
+
+        @Nullable
+        @Parameter(
+                names = {"-m", "--metrics-port"},
+                description = "Local port to serve lambda metrics in text format at `/metrics` path and stack " +
+                        "traces of lambda threads at `/threads` path. Not served by default. Both are available " +
+                        "over JMX regardless of this option."
+        )
+        private Integer metricsPort;
+
+        @Parameter(
+                names = {"--stall-threshold"},
+                description = "Time in seconds, after which lambda thread blocked on monitor or spinning on CPU " +
+                        "is reported as stalled."
+        )
+        private long stallThreshold = 30;
+
+        @Parameter(
+                names = {"-t", "--scheduler-threads"},
+                description = "Number of threads of scheduler shared by all lambdas."
+        )
+        private int schedulerThreads = 2;
+
+        @Parameter(
+                names = {"--start-timeout"},
+                description = "Overall timeout in seconds to start all lambda managers. Managers are started " +
+                        "concurrently."
+        )
+        private long startTimeout = 60;
+
+        @Parameter(
+                names = {"--stop-timeout"},
+                description = "Overall timeout in seconds to stop all lambda managers. Managers are stopped " +
+                        "concurrently."
+        )
+        private long stopTimeout = 55;
+
+        @Parameter(
+                names = {"--threads"},
+                description = "Kind of threads to run lambdas: `platform` or `virtual`. Virtual threads require " +
+                        "Java 21+."
+        )
+        private String threads = PlatformThreadFactoryProvider.NAME;
+
         @Parameter(names = {"-h", "--help"}, help = true, description = "Show help description.")
         private boolean help;
 
@@ -0,0 +1,32 @@
+package io.electrica.pipeline.java8.launcher;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.electrica.pipeline.java8.spi.ThreadFactoryProvider;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Default provider of OS threads.
+ */
+public class PlatformThreadFactoryProvider implements ThreadFactoryProvider {
+
+    static final String NAME = "platform";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public ThreadFactory newThreadFactory(String namePrefix) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(namePrefix.replace("%", "%%") + "%d")
+                .setDaemon(true)
+                .build();
+    }
+}
@@ -0,0 +1,172 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.Channel;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Lock-free bounded channel based on ring buffer of power of two size.
+ * <p>
+ * Each slot has sequence number, that tells whether slot is free for producer or filled for consumer of current
+ * lap, so producers and consumers claim slots by CAS of own position only and don't contend with each other.
+ * Waiting producers and consumers spin shortly, then park with growing interval up to
+ * {@link #MAX_PARK_NANOS}, i.e. idle channel adds up to this latency to the next element.
+ */
+class RingBufferChannel<T> implements Channel<T> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    // sequence of filled slot equals sequence of free slot of the next lap in ring of single slot
+    private static final int MIN_SIZE = 2;
+    private static final int SPIN_ATTEMPTS = 64;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_BACKOFF_EXPONENT = 10;
+
+    private final String name;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to power of two, at least {@link #MIN_SIZE}
+     */
+    RingBufferChannel(String name, int capacity) {
+        checkArgument(capacity > 0 && capacity <= MAX_CAPACITY, "Wrong channel capacity: %s", capacity);
+        this.name = name;
+        int size = capacity <= MIN_SIZE ? MIN_SIZE : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        elements = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public int size() {
+        // read head first, so concurrent consumers can't make size negative
+        long currentHead = head.get();
+        long size = tail.get() - currentHead;
+        return (int) Math.max(0, Math.min(size, getCapacity()));
+    }
+
+    @Override
+    public boolean offer(T element) {
+        checkNotNull(element, "Channel element can't be null");
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long lag = sequences.get(index) - position;
+            if (lag == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    // publish element to consumer of this lap
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (lag < 0) {
+                // slot isn't consumed since previous lap, i.e. channel is full
+                return false;
+            }
+            position = tail.get();
+        }
+    }
+
+    @Override
+    public boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(element)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            idle(attempt++, remaining);
+        }
+        return true;
+    }
+
+    @Override
+    public void put(T element) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(element)) {
+            idle(attempt++, Long.MAX_VALUE);
+        }
+    }
+
+    @Nullable
+    @Override
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long lag = sequences.get(index) - (position + 1);
+            if (lag == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T element = elements.get(index);
+                    elements.lazySet(index, null);
+                    // release slot to producer of next lap
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+            } else if (lag < 0) {
+                // slot isn't filled in this lap yet, i.e. channel is empty
+                return null;
+            }
+            position = head.get();
+        }
+    }
+
+    @Nullable
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        T element;
+        while ((element = poll()) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            idle(attempt++, remaining);
+        }
+        return element;
+    }
+
+    private static void idle(int attempt, long remainingNanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (attempt < SPIN_ATTEMPTS) {
+            Thread.yield();
+        } else {
+            long park = MIN_PARK_NANOS << Math.min(attempt - SPIN_ATTEMPTS, MAX_BACKOFF_EXPONENT);
+            LockSupport.parkNanos(Math.min(Math.min(park, MAX_PARK_NANOS), remainingNanos));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,168 @@
+package io.electrica.pipeline.java8.launcher;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shard membership of launchers on the same host, coordinated by slot files in shared directory.
+ * <p>
+ * Launcher holds lock of one of slot files while alive, OS releases it when process dies, so slot is taken by one
+ * launcher at a time. Slot owner writes heartbeat timestamp to its slot file on each probe and clears it on close.
+ * Slots of other launchers are read without taking their locks, slot is live while its heartbeat is fresh. Shard
+ * index of launcher is position of own slot among live slots, shard count is number of live slots. So shards
+ * rebalance, when launcher joins or leaves, or when heartbeat of died launcher gets stale. Views of launchers can
+ * differ until next probe, so message can be handled twice or rejected for short time after rebalance.
+ */
+@Slf4j
+class ShardLease implements AutoCloseable {
+
+    private static final String SLOT_FILE_PREFIX = "shard-";
+    private static final String SLOT_FILE_SUFFIX = ".lock";
+    private static final long PROBE_INTERVAL = TimeUnit.SECONDS.toMillis(2);
+    // slot is live if its heartbeat is written within few probe intervals
+    private static final long HEARTBEAT_TIMEOUT = 3 * PROBE_INTERVAL;
+    private static final int HEARTBEAT_SIZE = Long.BYTES;
+
+    private final Path directory;
+    private final int maxSlots;
+    private final HashSharding sharding;
+
+    private FileChannel channel;
+    private FileLock lock;
+    private int slot = -1;
+    private ScheduledFuture<?> probeFuture;
+
+    ShardLease(Path directory, int maxSlots) {
+        this.directory = directory;
+        this.maxSlots = maxSlots;
+        this.sharding = new HashSharding(0, 1);
+    }
+
+    HashSharding getSharding() {
+        return sharding;
+    }
+
+    /**
+     * Acquire free slot and start periodical probe of live slots.
+     *
+     * @throws IllegalStateException if all slots are taken
+     */
+    synchronized void acquire(ScheduledExecutorService scheduler) throws IOException {
+        Files.createDirectories(directory);
+        for (int i = 0; i < maxSlots && lock == null; i++) {
+            FileChannel candidate = openSlot(i);
+            FileLock candidateLock = tryLock(candidate);
+            if (candidateLock == null) {
+                candidate.close();
+            } else {
+                channel = candidate;
+                lock = candidateLock;
+                slot = i;
+            }
+        }
+        if (lock == null) {
+            throw new IllegalStateException("All " + maxSlots + " shard slots are taken in: " + directory);
+        }
+        log.info("Acquired shard slot {} in: {}", slot, directory);
+        heartbeat();
+        probe();
+        probeFuture = scheduler.scheduleWithFixedDelay(
+                this::probe,
+                PROBE_INTERVAL,
+                PROBE_INTERVAL,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    private Path slotPath(int slot) {
+        return directory.resolve(SLOT_FILE_PREFIX + slot + SLOT_FILE_SUFFIX);
+    }
+
+    private FileChannel openSlot(int slot) throws IOException {
+        return FileChannel.open(slotPath(slot), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by current process
+            return null;
+        }
+    }
+
+    private synchronized void probe() {
+        if (lock == null) {
+            return;
+        }
+        try {
+            heartbeat();
+            long now = System.currentTimeMillis();
+            List<Integer> liveSlots = new ArrayList<>();
+            for (int i = 0; i < maxSlots; i++) {
+                if (i == slot || isLive(i, now)) {
+                    liveSlots.add(i);
+                }
+            }
+            int index = liveSlots.indexOf(slot);
+            int count = liveSlots.size();
+            if (index != sharding.getIndex() || count != sharding.getCount()) {
+                sharding.update(index, count);
+                log.info("Shards rebalanced, current shard {} of {}", index, count);
+            }
+        } catch (Exception e) {
+            log.error("Error probing shard slots in: {}", directory, e);
+        }
+    }
+
+    private void heartbeat() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEARTBEAT_SIZE).putLong(0, System.currentTimeMillis());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, buffer.position());
+        }
+    }
+
+    /**
+     * Check heartbeat of slot of other launcher. Slot lock isn't taken, so concurrently acquiring launcher doesn't
+     * see slot as taken.
+     */
+    private boolean isLive(int slot, long now) throws IOException {
+        Path path = slotPath(slot);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        byte[] heartbeat = Files.readAllBytes(path);
+        if (heartbeat.length < HEARTBEAT_SIZE) {
+            // never acquired or cleared on close
+            return false;
+        }
+        return now - ByteBuffer.wrap(heartbeat).getLong() < HEARTBEAT_TIMEOUT;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (probeFuture != null) {
+            probeFuture.cancel(false);
+        }
+        if (lock != null) {
+            // peers see slot left at once, without waiting for heartbeat timeout
+            channel.truncate(0);
+            lock.release();
+            channel.close();
+            lock = null;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.electrica.pipeline.java8.launcher;
+
+import io.electrica.pipeline.java8.spi.ThreadFactoryProvider;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provider of virtual threads, available on Java 21+. Idle lambdas parked on virtual thread don't hold OS thread,
+ * so blocking lambdas can be packed densely.
+ * <p>
+ * Virtual thread API is called reflectively, so launcher still targets Java 8.
+ */
+public class VirtualThreadFactoryProvider implements ThreadFactoryProvider {
+
+    static final String NAME = "virtual";
+
+    @Nullable
+    private static final Method OF_VIRTUAL_METHOD;
+    @Nullable
+    private static final Method NAME_METHOD;
+    @Nullable
+    private static final Method FACTORY_METHOD;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+        } catch (ReflectiveOperationException e) {
+            // virtual threads aren't supported by current JVM
+        }
+        OF_VIRTUAL_METHOD = ofVirtual;
+        NAME_METHOD = name;
+        FACTORY_METHOD = factory;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return OF_VIRTUAL_METHOD != null && NAME_METHOD != null && FACTORY_METHOD != null;
+    }
+
+    @Override
+    public ThreadFactory newThreadFactory(String namePrefix) {
+        if (!isAvailable()) {
+            throw new IllegalStateException("Virtual threads require Java 21+");
+        }
+        try {
+            Object builder = OF_VIRTUAL_METHOD.invoke(null);
+            builder = NAME_METHOD.invoke(builder, namePrefix, 0L);
+            return (ThreadFactory) FACTORY_METHOD.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create virtual thread factory", e);
+        }
+    }
+}
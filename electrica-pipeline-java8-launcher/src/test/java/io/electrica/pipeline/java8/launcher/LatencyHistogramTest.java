@@ -0,0 +1,91 @@
+package io.electrica.pipeline.java8.launcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    // relative error of bucket upper bound for 16 sub-buckets per power of two
+    private static final double MAX_RELATIVE_ERROR = 1.0 / 16;
+
+    @Test
+    void emptyHistogramReportsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getTotal());
+        assertEquals(0, snapshot.valueAt(50));
+        assertEquals(0, snapshot.max());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0; value < 16; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(16, snapshot.getTotal());
+        assertEquals(0, snapshot.valueAt(0));
+        assertEquals(7, snapshot.valueAt(50));
+        assertEquals(15, snapshot.max());
+    }
+
+    @Test
+    void negativeValueIsRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().max());
+    }
+
+    @Test
+    void valueIsNeverUnderestimatedAndRelativeErrorIsBounded() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(value);
+            long reported = histogram.snapshot().max();
+            assertTrue(reported >= value, "Underestimated " + value + ": " + reported);
+            assertTrue(reported - value <= value * MAX_RELATIVE_ERROR, "Overestimated " + value + ": " + reported);
+        }
+    }
+
+    @Test
+    void maxValueIsRecorded() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().max());
+    }
+
+    @Test
+    void percentilesOfUniformDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getTotal());
+        assertWithinError(500, snapshot.valueAt(50));
+        assertWithinError(990, snapshot.valueAt(99));
+        assertWithinError(1000, snapshot.max());
+    }
+
+    @Test
+    void snapshotIsNotAffectedByLaterRecords() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(10);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        histogram.record(1_000_000);
+        assertEquals(1, snapshot.getTotal());
+        assertEquals(10, snapshot.max());
+    }
+
+    private static void assertWithinError(long expected, long actual) {
+        assertTrue(
+                actual >= expected && actual - expected <= expected * MAX_RELATIVE_ERROR,
+                "Expected about " + expected + ", but " + actual
+        );
+    }
+}
@@ -0,0 +1,146 @@
+package io.electrica.pipeline.java8.launcher;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferChannelTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 4;
+    private static final int ELEMENTS_PER_PRODUCER = 100_000;
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new RingBufferChannel<>("test", 1).getCapacity());
+        assertEquals(2, new RingBufferChannel<>("test", 2).getCapacity());
+        assertEquals(4, new RingBufferChannel<>("test", 3).getCapacity());
+        assertEquals(1024, new RingBufferChannel<>("test", 1000).getCapacity());
+        assertEquals(1024, new RingBufferChannel<>("test", 1024).getCapacity());
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferChannel<>("test", 0));
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferChannel<>("test", (1 << 30) + 1));
+    }
+
+    @Test
+    void offerFailsOnFullAndPollOnEmptyChannel() {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>("test", 4);
+        assertNull(channel.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(channel.offer(i));
+        }
+        assertFalse(channel.offer(4));
+        assertEquals(4, channel.size());
+
+        // elements are taken in order and channel wraps around
+        assertEquals(Integer.valueOf(0), channel.poll());
+        assertTrue(channel.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), channel.poll());
+        }
+        assertNull(channel.poll());
+        assertEquals(0, channel.size());
+    }
+
+    @Test
+    void timedOperationsGiveUpAfterTimeout() throws InterruptedException {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>("test", 2);
+        assertNull(channel.poll(10, TimeUnit.MILLISECONDS));
+        assertTrue(channel.offer(1, 10, TimeUnit.MILLISECONDS));
+        assertTrue(channel.offer(2, 10, TimeUnit.MILLISECONDS));
+        assertFalse(channel.offer(3, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void putOnFullChannelIsInterrupted() throws InterruptedException {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>("test", 2);
+        channel.put(1);
+        channel.put(2);
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(InterruptedException.class, () -> channel.put(3));
+            // interrupt status is consumed by exception
+            assertFalse(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals(Integer.valueOf(1), channel.poll());
+    }
+
+    @Test
+    void pollOfEmptyChannelIsInterrupted() throws Exception {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>("test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> poll = executor.submit(() -> {
+                started.countDown();
+                return channel.poll(1, TimeUnit.MINUTES);
+            });
+            assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+            poll.cancel(true);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(TIMEOUT, TimeUnit.MILLISECONDS), "Poll isn't interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void elementsAreNeitherLostNorDuplicatedByConcurrentProducersAndConsumers() throws Exception {
+        RingBufferChannel<Integer> channel = new RingBufferChannel<>("test", 64);
+        int total = PRODUCERS * ELEMENTS_PER_PRODUCER;
+        AtomicIntegerArray received = new AtomicIntegerArray(total);
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS + CONSUMERS);
+        try {
+            List<Future<?>> producers = new ArrayList<>();
+            for (int p = 0; p < PRODUCERS; p++) {
+                int first = p * ELEMENTS_PER_PRODUCER;
+                producers.add(executor.submit(() -> {
+                    for (int i = first; i < first + ELEMENTS_PER_PRODUCER; i++) {
+                        channel.put(i);
+                    }
+                    return null;
+                }));
+            }
+            CountDownLatch consumed = new CountDownLatch(total);
+            List<Future<?>> consumers = new ArrayList<>();
+            for (int c = 0; c < CONSUMERS; c++) {
+                consumers.add(executor.submit(() -> {
+                    while (consumed.getCount() > 0) {
+                        Integer element = channel.poll(10, TimeUnit.MILLISECONDS);
+                        if (element != null) {
+                            received.incrementAndGet(element);
+                            consumed.countDown();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<?> producer : producers) {
+                producer.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            assertTrue(consumed.await(TIMEOUT, TimeUnit.MILLISECONDS), "Elements lost: " + consumed.getCount());
+            for (Future<?> consumer : consumers) {
+                consumer.get(TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < total; i++) {
+            assertEquals(1, received.get(i), "Element " + i + " received times");
+        }
+        assertNull(channel.poll());
+    }
+}
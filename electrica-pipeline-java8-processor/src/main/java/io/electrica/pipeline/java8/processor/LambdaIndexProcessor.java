@@ -0,0 +1,104 @@
+package io.electrica.pipeline.java8.processor;
+
+import io.electrica.pipeline.java8.spi.Lambda;
+import io.electrica.pipeline.java8.spi.LambdaName;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Writes index of lambdas annotated by {@link LambdaName} into {@link LambdaName#INDEX_RESOURCE}, so launcher
+ * can find lambda by name without loading and instantiating all lambdas available in classpath.
+ */
+public class LambdaIndexProcessor extends AbstractProcessor {
+
+    private final Map<String, String> index = new TreeMap<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(LambdaName.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!index.isEmpty()) {
+                writeIndex();
+            }
+            return false;
+        }
+
+        TypeMirror lambdaType = processingEnv.getElementUtils()
+                .getTypeElement(Lambda.class.getCanonicalName())
+                .asType();
+        for (Element element : roundEnv.getElementsAnnotatedWith(LambdaName.class)) {
+            String name = element.getAnnotation(LambdaName.class).value();
+            if (!isValidLambda(element, lambdaType)) {
+                error(element, "@LambdaName is applicable for public non-abstract top level or static classes " +
+                        "implementing: " + Lambda.class.getCanonicalName());
+            } else if (name.isEmpty()) {
+                error(element, "Lambda name cannot be empty");
+            } else {
+                String className = processingEnv.getElementUtils()
+                        .getBinaryName((TypeElement) element)
+                        .toString();
+                String old = index.putIfAbsent(name, className);
+                if (old != null && !old.equals(className)) {
+                    error(element, "Duplicate lambda for name: " + name + ", already declared by: " + old);
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isValidLambda(Element element, TypeMirror lambdaType) {
+        return element.getKind() == ElementKind.CLASS &&
+                element.getModifiers().contains(Modifier.PUBLIC) &&
+                !element.getModifiers().contains(Modifier.ABSTRACT) &&
+                (element.getEnclosingElement().getKind() == ElementKind.PACKAGE ||
+                        element.getModifiers().contains(Modifier.STATIC)) &&
+                processingEnv.getTypeUtils().isAssignable(element.asType(), lambdaType);
+    }
+
+    private void writeIndex() {
+        Properties properties = new Properties();
+        properties.putAll(index);
+        try {
+            FileObject resource = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", LambdaName.INDEX_RESOURCE);
+            try (OutputStream out = resource.openOutputStream()) {
+                properties.store(out, "Lambda index generated by " + getClass().getName());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Can't write lambda index: " + e.getMessage()
+            );
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
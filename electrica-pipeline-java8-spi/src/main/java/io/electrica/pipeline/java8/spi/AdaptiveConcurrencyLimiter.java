@@ -0,0 +1,113 @@
+package io.electrica.pipeline.java8.spi;
+
+/**
+ * AIMD concurrency limiter for outbound calls, e.g. to connector API.
+ * <p>
+ * Limit grows by one per limit of successful calls while latency stays close to observed minimum and limit is
+ * utilized. Limit is reduced multiplicatively if call dropped, e.g. rejected by API quota, or latency exceeds
+ * tolerated multiple of minimum. Minimum latency is re-based periodically to follow downstream changes.
+ * <p>
+ * Usage:
+ * <pre>{@code
+ * long start = limiter.acquire();
+ * try {
+ *     call();
+ *     limiter.onSuccess(start);
+ * } catch (QuotaException e) {
+ *     limiter.onDropped(start);
+ *     throw e;
+ * } catch (RuntimeException e) {
+ *     limiter.onIgnore(start);
+ *     throw e;
+ * }
+ * }</pre>
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final int MIN_LATENCY_WINDOW = 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double limit;
+    private int inFlight;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Wrong limits, expected 0 < min <= initial <= max: " +
+                    minLimit + ", " + initialLimit + ", " + maxLimit);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Await free slot within current limit.
+     *
+     * @return call start time to pass to completion callback
+     */
+    public synchronized long acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Complete successful call started at specified time.
+     */
+    public synchronized void onSuccess(long startNanos) {
+        long latency = System.nanoTime() - startNanos;
+        if (++samples >= MIN_LATENCY_WINDOW) {
+            samples = 0;
+            minLatencyNanos = latency;
+        } else {
+            minLatencyNanos = Math.min(minLatencyNanos, latency);
+        }
+
+        if (latency > minLatencyNanos * LATENCY_TOLERANCE) {
+            backoff();
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        release();
+    }
+
+    /**
+     * Complete call started at specified time, that failed due to downstream overload.
+     */
+    public synchronized void onDropped(long startNanos) {
+        backoff();
+        release();
+    }
+
+    /**
+     * Complete call started at specified time, that failed for reason unrelated to load, e.g. invalid request.
+     */
+    public synchronized void onIgnore(long startNanos) {
+        release();
+    }
+
+    private void backoff() {
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+    }
+
+    private void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,21 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.Electrica;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Lambda, that runs main job without occupying launcher thread, e.g. on launcher scheduler.
+ * <p>
+ * Launcher invokes {@link #doWorkAsync(Electrica)} instead of {@link #doWork(Electrica)} and returns its thread
+ * to pool until returned stage completes, so many idle lambdas don't hold as many threads. Then
+ * {@link #destroy(Electrica)} is invoked by launcher thread, that may differ from thread of
+ * {@link #initialize(Electrica)}.
+ */
+public interface AsyncLambda extends Lambda {
+
+    /**
+     * Start main job and return stage, that completes once main job is finished, e.g. after stop signal.
+     */
+    CompletionStage<Void> doWorkAsync(Electrica electrica) throws Exception;
+}
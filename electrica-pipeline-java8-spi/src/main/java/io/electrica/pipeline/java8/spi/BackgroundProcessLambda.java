@@ -7,6 +7,16 @@ import java.util.concurrent.CountDownLatch;
 public abstract class BackgroundProcessLambda implements Lambda {
 
     private final CountDownLatch stopSignalLatch = new CountDownLatch(1);
+    private LambdaContext context;
+
+    @Override
+    public void setContext(LambdaContext context) {
+        this.context = context;
+    }
+
+    protected LambdaContext getContext() {
+        return context;
+    }
 
     @Override
     public void onStopSignal() {
@@ -0,0 +1,107 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.MessageListener;
+import io.electrica.sdk.java8.api.http.Message;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Message listener wrapper with admission control. At most {@code maxInFlight} messages are processed by
+ * delegate concurrently, at most {@code maxWaiting} messages wait for free slot and each of them no longer than
+ * specified timeout. Other messages are shed to rejection listener, that should respond fast, e.g. with
+ * "busy, retry later" response, so latency stays bounded and work doesn't pile up when downstream slows down.
+ * All messages are shed while optional overload condition holds, e.g. heap usage is too high.
+ */
+public class BoundedMessageListener implements MessageListener {
+
+    private final MessageListener delegate;
+    private final MessageListener rejectionListener;
+    private final int maxInFlight;
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+    private final BooleanSupplier overloaded;
+
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    public BoundedMessageListener(
+            MessageListener delegate,
+            MessageListener rejectionListener,
+            int maxInFlight,
+            int maxWaiting,
+            long maxWait,
+            TimeUnit unit
+    ) {
+        this(delegate, rejectionListener, maxInFlight, maxWaiting, maxWait, unit, () -> false);
+    }
+
+    public BoundedMessageListener(
+            MessageListener delegate,
+            MessageListener rejectionListener,
+            int maxInFlight,
+            int maxWaiting,
+            long maxWait,
+            TimeUnit unit,
+            BooleanSupplier overloaded
+    ) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in-flight messages must be positive: " + maxInFlight);
+        }
+        if (maxWaiting < 0 || maxWait < 0) {
+            throw new IllegalArgumentException("Max waiting messages and max wait can't be negative");
+        }
+        this.delegate = delegate;
+        this.rejectionListener = rejectionListener;
+        this.maxInFlight = maxInFlight;
+        this.maxWaiting = maxWaiting;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.overloaded = overloaded;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    @Nullable
+    @Override
+    public String onMessage(Message message) {
+        if (overloaded.getAsBoolean() || !acquire()) {
+            return rejectionListener.onMessage(message);
+        }
+        try {
+            return delegate.onMessage(message);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean acquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        if (maxWaiting == 0 || maxWaitNanos == 0) {
+            return false;
+        }
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            return false;
+        }
+        try {
+            return permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return waiting.get();
+    }
+}
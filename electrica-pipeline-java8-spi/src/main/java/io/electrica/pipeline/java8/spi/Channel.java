@@ -0,0 +1,58 @@
+package io.electrica.pipeline.java8.spi;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded in-process channel to pass elements between lambdas of the same launcher without serialization, see
+ * {@link LambdaContext#getChannel(String, Class)}.
+ * <p>
+ * Channel supports many producers and many consumers. Full channel makes producers wait, so slow stage throttles
+ * previous ones. Elements aren't durable, they are lost if launcher stops before they are consumed.
+ */
+public interface Channel<T> {
+
+    String getName();
+
+    int getCapacity();
+
+    /**
+     * Approximate number of elements in channel.
+     */
+    int size();
+
+    /**
+     * Add element if channel isn't full.
+     *
+     * @return {@code false} if channel is full
+     */
+    boolean offer(T element);
+
+    /**
+     * Add element, waiting up to specified timeout for free space.
+     *
+     * @return {@code false} if channel is still full after timeout
+     */
+    boolean offer(T element, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Add element, waiting for free space as long as needed.
+     */
+    void put(T element) throws InterruptedException;
+
+    /**
+     * Take element if channel isn't empty.
+     *
+     * @return {@code null} if channel is empty
+     */
+    @Nullable
+    T poll();
+
+    /**
+     * Take element, waiting up to specified timeout for it.
+     *
+     * @return {@code null} if channel is still empty after timeout
+     */
+    @Nullable
+    T poll(long timeout, TimeUnit unit) throws InterruptedException;
+}
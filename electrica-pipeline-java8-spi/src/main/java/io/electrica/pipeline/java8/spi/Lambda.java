@@ -11,6 +11,15 @@ public interface Lambda {
      */
     String getName();
 
+    /**
+     * Invoked by launcher right after lambda instance creation, before {@link #initialize(Electrica)}.
+     * <p>
+     * Provides access to facilities managed by launcher, e.g. metrics.
+     */
+    default void setContext(LambdaContext context) {
+        // nop implementation
+    }
+
     /**
      * Invoked when pipeline or particular lambda get stop signal.
      * <p>
@@ -0,0 +1,87 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.Electrica;
+import io.electrica.sdk.java8.api.MessageListener;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Launcher managed facilities available to lambda.
+ * <p>
+ * Shared by all instances of the same lambda.
+ */
+public interface LambdaContext {
+
+    /**
+     * Metrics of current lambda.
+     */
+    LambdaMetrics getMetrics();
+
+    /**
+     * Launcher-wide scheduler with small thread pool, shared by all lambdas. Scheduled tasks should be short.
+     * <p>
+     * Lambda is responsible to cancel own tasks on stop.
+     */
+    ScheduledExecutorService getScheduler();
+
+    /**
+     * Launcher configured provider of threads that run lambda. Lambda should create own threads, e.g. to dispatch
+     * messages, by factories of this provider, so they are of the same kind as lambda threads and are watched by
+     * launcher as lambda threads.
+     */
+    ThreadFactoryProvider getThreadFactoryProvider();
+
+    /**
+     * Durable spool of accepted messages, located in lambda data directory. Pending entries of previous run
+     * should be recovered on lambda initialization.
+     *
+     * @return {@code null} if launcher data directory isn't configured
+     */
+    @Nullable
+    MessageSpool getSpool();
+
+    /**
+     * Lambda parameters set by launcher options.
+     */
+    LambdaParameters getParameters();
+
+    /**
+     * Ownership of messages by current launcher, if several launchers handle the same traffic.
+     */
+    Sharding getSharding();
+
+    /**
+     * Launcher-wide channel of specified name, created on first request. Lambdas that request the same name get
+     * the same channel, e.g. to chain lambdas into multi-stage pipeline, see {@link StageLambda}.
+     * <p>
+     * Element type should be loaded by class loader common to all lambdas of channel, e.g. from launcher classpath
+     * or {@code shared} lambdas directory.
+     *
+     * @throws IllegalArgumentException if channel already exists with another element type
+     */
+    <T> Channel<T> getChannel(String name, Class<T> type);
+
+    /**
+     * Launcher-wide dispatcher of specified connection, created on first request. Lambdas and instances, that use
+     * the same Electrica instance, get the same dispatcher, so connection has single listener. Dispatcher is
+     * attached while it has handlers, so lambda should only unregister own handlers on destroy.
+     */
+    MessageDispatcher getDispatcher(Electrica electrica, String connectorErn, String connectionName);
+
+    /**
+     * Object of specified name shared by all instances of lambda, created by specified factory on first request,
+     * e.g. cache or limiter, that should be loaded once or enforce its limit across instances. Shared objects
+     * that are {@link AutoCloseable} are closed once all lambda instances are stopped.
+     *
+     * @throws IllegalArgumentException if object already exists with another type
+     */
+    <T> T getShared(String name, Class<T> type, Callable<T> factory) throws Exception;
+
+    /**
+     * Wrap message listener to enforce lambda message budget: specified defaults overridden by lambda parameters,
+     * and heap usage soft cap. Messages out of budget are handed over to rejection listener.
+     */
+    MessageListener limit(MessageListener listener, MessageListener rejectionListener, MessageBudget defaults);
+}
@@ -0,0 +1,51 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.MessageListener;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Lambda metrics sink. Implementation have to be cheap and thread-safe, so it can be used on hot path.
+ */
+public interface LambdaMetrics {
+
+    /**
+     * Metrics that discard all records.
+     */
+    LambdaMetrics NOOP = (operation, durationNanos, success) -> {
+    };
+
+    /**
+     * Record single invocation of specified operation.
+     *
+     * @param operation     operation name, e.g. {@code onMessage}
+     * @param durationNanos invocation duration in nanoseconds
+     * @param success       {@code false} if invocation failed
+     */
+    void record(String operation, long durationNanos, boolean success);
+
+    /**
+     * Register gauge, which value is read on demand, e.g. current concurrency limit. Gauge registered again
+     * with the same name replaces previous one.
+     */
+    default void gauge(String name, LongSupplier value) {
+    }
+
+    /**
+     * Wrap message listener to record each invocation as specified operation. Invocation considered as failed
+     * if listener throws exception.
+     */
+    default MessageListener instrument(String operation, MessageListener listener) {
+        return message -> {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                String result = listener.onMessage(message);
+                success = true;
+                return result;
+            } finally {
+                record(operation, System.nanoTime() - start, success);
+            }
+        };
+    }
+}
@@ -0,0 +1,23 @@
+package io.electrica.pipeline.java8.spi;
+
+import java.lang.annotation.*;
+
+/**
+ * Declares lambda name at build time, so lambda can be found by name without instantiation.
+ * <p>
+ * Annotation processor from {@code electrica-pipeline-java8-processor} writes name to class index into
+ * {@link #INDEX_RESOURCE} of lambda jar. Value have to be the same as {@link Lambda#getName()} returns.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface LambdaName {
+
+    /**
+     * Location of lambda index in jar. Index has properties format with lambda names as keys and lambda class
+     * names as values.
+     */
+    String INDEX_RESOURCE = "META-INF/electrica/lambda.index";
+
+    String value();
+}
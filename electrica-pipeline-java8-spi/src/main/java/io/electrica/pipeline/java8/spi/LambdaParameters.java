@@ -0,0 +1,102 @@
+package io.electrica.pipeline.java8.spi;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed view of lambda parameters set by launcher {@code -p lambda.key=value} option.
+ * <p>
+ * Some keys are reserved for resource budgets enforced by launcher, see constants.
+ */
+public class LambdaParameters {
+
+    public static final LambdaParameters EMPTY = new LambdaParameters(Collections.emptyMap());
+
+    /**
+     * Number of lambda instances, each run by own thread.
+     */
+    public static final String CONCURRENCY = "concurrency";
+    /**
+     * Max number of messages processed concurrently by limited listener.
+     */
+    public static final String MAX_IN_FLIGHT = "maxInFlight";
+    /**
+     * Max number of messages waiting for processing by limited listener.
+     */
+    public static final String QUEUE_DEPTH = "queueDepth";
+    /**
+     * Max wait of message for processing by limited listener, in milliseconds.
+     */
+    public static final String QUEUE_TIMEOUT = "queueTimeout";
+    /**
+     * Usage of tenured heap pool after last collection in percents of pool max, above which limited listener sheds
+     * messages. Heap usage in percents of max heap is used if JVM has no such pool.
+     */
+    public static final String HEAP_SOFT_CAP = "heapSoftCap";
+    /**
+     * Name of channel consumed by {@link StageLambda}, overrides one declared by lambda.
+     */
+    public static final String INPUT_CHANNEL = "inputChannel";
+    /**
+     * Name of channel produced by {@link StageLambda}, overrides one declared by lambda.
+     */
+    public static final String OUTPUT_CHANNEL = "outputChannel";
+
+    private final Map<String, String> values;
+
+    public LambdaParameters(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+    }
+
+    @Nullable
+    public String getString(String key) {
+        return values.get(key);
+    }
+
+    public String getString(String key, String defaultValue) {
+        return values.getOrDefault(key, defaultValue);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Integer expected for parameter " + key + ": " + value, e);
+        }
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = values.get(key);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Long expected for parameter " + key + ": " + value, e);
+        }
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = values.get(key);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Number expected for parameter " + key + ": " + value, e);
+        }
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
@@ -12,6 +12,16 @@ public abstract class LoopBackgroundProcessLambda implements Lambda {
     private static final long DEFAULT_SLEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
 
     private AtomicReference<Thread> threadReference = new AtomicReference<>();
+    private LambdaContext context;
+
+    @Override
+    public void setContext(LambdaContext context) {
+        this.context = context;
+    }
+
+    protected LambdaContext getContext() {
+        return context;
+    }
 
     @Override
     public void onStopSignal() {
@@ -0,0 +1,25 @@
+package io.electrica.pipeline.java8.spi;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Lambda defaults of message listener budget, overridden by {@link LambdaParameters#MAX_IN_FLIGHT},
+ * {@link LambdaParameters#QUEUE_DEPTH} and {@link LambdaParameters#QUEUE_TIMEOUT} parameters.
+ */
+@Getter
+@AllArgsConstructor
+public class MessageBudget {
+
+    /**
+     * Budget without limits.
+     */
+    public static final MessageBudget UNLIMITED = new MessageBudget(Integer.MAX_VALUE, 0, 0);
+
+    private final int maxInFlight;
+    private final int queueDepth;
+    /**
+     * Max wait of message for processing, in milliseconds.
+     */
+    private final long queueTimeout;
+}
@@ -0,0 +1,204 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.Connection;
+import io.electrica.sdk.java8.api.MessageListener;
+import io.electrica.sdk.java8.api.http.Message;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Message listener that routes messages to handlers by message property values, e.g. by {@code tag}.
+ * <p>
+ * Dispatcher is attached to connection as single listener instead of registering listener with own predicate
+ * per handler, so routing cost is hash table look up per routing property key and doesn't depend on number of
+ * handlers. Routing property keys are checked in order of first registration, first matched route wins.
+ * Handler can be registered with additional filter, e.g. to accept only messages owned by current shard.
+ * <p>
+ * Several handlers registered for the same property value, e.g. by instances of the same lambda, get messages
+ * in turn. Handler is chosen by {@link #onMessage(Message)}, as connection may invoke it on another thread than
+ * {@link #accepts(Message)}, which only checks that some handler matches and doesn't advance the turn.
+ */
+public class MessageDispatcher implements MessageListener {
+
+    private final List<String> propertyKeys = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, Route>> routes = new ConcurrentHashMap<>();
+
+    @Nullable
+    private final Connection autoAttachConnection;
+
+    // guarded by this
+    private int handlerCount;
+    @Nullable
+    private Connection connection;
+    @Nullable
+    private UUID listenerId;
+
+    /**
+     * Dispatcher, that is attached to connection explicitly by {@link #attach(Connection)}.
+     */
+    public MessageDispatcher() {
+        this.autoAttachConnection = null;
+    }
+
+    /**
+     * Dispatcher, that is attached to specified connection while it has registered handlers.
+     */
+    public MessageDispatcher(Connection connection) {
+        this.autoAttachConnection = connection;
+    }
+
+    /**
+     * Register handler for messages with specified property value.
+     */
+    public void register(String propertyKey, String propertyValue, MessageListener handler) {
+        register(propertyKey, propertyValue, message -> true, handler);
+    }
+
+    /**
+     * Register handler for messages with specified property value, that match specified filter.
+     */
+    public synchronized void register(
+            String propertyKey,
+            String propertyValue,
+            Predicate<Message> filter,
+            MessageListener handler
+    ) {
+        Route route = routes
+                .computeIfAbsent(propertyKey, key -> {
+                    propertyKeys.add(key);
+                    return new ConcurrentHashMap<>();
+                })
+                .computeIfAbsent(propertyValue, value -> new Route());
+        List<Handler> handlers = new ArrayList<>(route.handlers);
+        handlers.add(new Handler(filter, handler));
+        route.handlers = handlers;
+        handlerCount++;
+        if (autoAttachConnection != null && connection == null) {
+            attach(autoAttachConnection);
+        }
+    }
+
+    /**
+     * Remove handler registered for specified property value.
+     */
+    public synchronized void unregister(String propertyKey, String propertyValue, MessageListener handler) {
+        ConcurrentMap<String, Route> values = routes.get(propertyKey);
+        Route route = values == null ? null : values.get(propertyValue);
+        if (route == null) {
+            return;
+        }
+        List<Handler> handlers = new ArrayList<>(route.handlers);
+        for (Handler registered : route.handlers) {
+            if (registered.listener == handler) {
+                handlers.remove(registered);
+                handlerCount--;
+            }
+        }
+        route.handlers = handlers;
+        if (handlers.isEmpty()) {
+            values.remove(propertyValue);
+        }
+        if (autoAttachConnection != null && handlerCount == 0) {
+            detach();
+        }
+    }
+
+    /**
+     * Find handler of message.
+     *
+     * @param select {@code true} to choose handler in turn, otherwise the first matched handler is returned
+     */
+    @Nullable
+    private Handler route(Message message, boolean select) {
+        Map<String, String> properties = message.getPropertiesMap();
+        for (String propertyKey : propertyKeys) {
+            String propertyValue = properties.get(propertyKey);
+            if (propertyValue != null) {
+                Route route = routes.get(propertyKey).get(propertyValue);
+                if (route != null) {
+                    return route.select(message, select);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if message has registered handler. Used as connection listener filter.
+     */
+    public boolean accepts(Message message) {
+        return route(message, false) != null;
+    }
+
+    @Nullable
+    @Override
+    public String onMessage(Message message) {
+        // handler can be unregistered after message accepted
+        Handler handler = route(message, true);
+        return handler == null ? null : handler.listener.onMessage(message);
+    }
+
+    /**
+     * Add dispatcher as message listener of specified connection.
+     */
+    public synchronized void attach(Connection connection) {
+        if (this.connection != null) {
+            throw new IllegalStateException("Dispatcher already attached");
+        }
+        listenerId = connection.addMessageListener(this::accepts, this);
+        this.connection = connection;
+    }
+
+    /**
+     * Remove dispatcher from connection, if attached.
+     */
+    public synchronized void detach() {
+        if (connection != null) {
+            connection.removeMessageListener(listenerId);
+            connection = null;
+            listenerId = null;
+        }
+    }
+
+    private static class Route {
+
+        private final AtomicInteger next = new AtomicInteger();
+        // replaced on change under dispatcher lock
+        private volatile List<Handler> handlers = Collections.emptyList();
+
+        @Nullable
+        private Handler select(Message message, boolean inTurn) {
+            List<Handler> current = handlers;
+            int size = current.size();
+            int start = inTurn && size > 1 ? Math.floorMod(next.getAndIncrement(), size) : 0;
+            for (int i = 0; i < size; i++) {
+                Handler handler = current.get((start + i) % size);
+                if (handler.filter.test(message)) {
+                    return handler;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Handler {
+
+        private final Predicate<Message> filter;
+        private final MessageListener listener;
+
+        private Handler(Predicate<Message> filter, MessageListener listener) {
+            this.filter = filter;
+            this.listener = listener;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package io.electrica.pipeline.java8.spi;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe append-only spool of accepted messages, so message can be acknowledged as soon as it is spooled
+ * and processed asynchronously afterwards.
+ * <p>
+ * Spool consists of memory-mapped segment files of fixed size, entry larger than segment gets own segment of
+ * entry size. Each record is either message entry or completion marker of previously appended entry, protected
+ * by checksum, so torn tail of segment written before crash is detected and ignored. Entries not completed before
+ * restart are recovered on open. Leading segments without pending entries are deleted on segment rollover or by
+ * {@link #compact()}. Few entries left pending in leading segment, e.g. of stuck message, are relocated to current
+ * segment, so they don't hold later segments. Entries that can't be processed are moved out of spool by
+ * {@link #park(long)}.
+ * <p>
+ * {@link #append(byte[])} returns once entry is forced to storage. Concurrent appends are forced together, so
+ * single fsync covers all entries appended while previous fsync was in progress. Completion markers aren't
+ * forced, so entry completed right before crash can be recovered again, i.e. delivery is at-least-once.
+ */
+@Slf4j
+public class MessageSpool implements Closeable {
+
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".spool";
+    private static final String PARKED_DIRECTORY = "parked";
+    private static final String PARKED_FILE_SUFFIX = ".entry";
+    private static final byte ENTRY_RECORD = 1;
+    private static final byte COMPLETE_RECORD = 2;
+    // type, entry id, payload length, checksum
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 4 + 8;
+    // leading segment is relocated if its pending entries take less than this part of segment size
+    private static final int RELOCATION_SEGMENT_FRACTION = 4;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    // segment sequence number to ids of pending entries, ordered by sequence number
+    private final TreeMap<Long, Set<Long>> segments = new TreeMap<>();
+    // pending entry id to location of its record
+    private final Map<Long, Location> pending = new HashMap<>();
+    private List<Entry> recovered;
+
+    private long nextEntryId;
+    private long segmentSequence;
+    private MappedByteBuffer segment;
+    private final List<MappedByteBuffer> unsyncedSegments = new ArrayList<>();
+    private long writeCount;
+    private boolean compacting;
+
+    private final Object syncLock = new Object();
+    private long syncedCount;
+
+    private boolean closed;
+
+    private MessageSpool(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Open spool in specified directory and recover entries not completed before.
+     *
+     * @param segmentSize size of segment file in bytes, larger entries get own segments
+     */
+    public static MessageSpool open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Spool segment size is too small: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        MessageSpool spool = new MessageSpool(directory, segmentSize);
+        spool.load();
+        return spool;
+    }
+
+    private void load() throws IOException {
+        Map<Long, Entry> entries = new LinkedHashMap<>();
+        long lastSequence = -1;
+        for (Long sequence : listSegments()) {
+            segments.put(sequence, new HashSet<>());
+            lastSequence = sequence;
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segmentPath(sequence)));
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int position = buffer.position();
+                byte type = buffer.get();
+                long id = buffer.getLong();
+                int length = buffer.getInt();
+                long checksum = buffer.getLong();
+                if ((type != ENTRY_RECORD && type != COMPLETE_RECORD) || length < 0 || length > buffer.remaining()) {
+                    // end of written data or torn record
+                    break;
+                }
+                byte[] payload = new byte[length];
+                buffer.get(payload);
+                if (checksum != checksum(type, id, payload)) {
+                    log.warn("Skip torn tail of spool segment: {}", segmentPath(sequence));
+                    break;
+                }
+                nextEntryId = Math.max(nextEntryId, id + 1);
+                if (type == ENTRY_RECORD) {
+                    entries.put(id, new Entry(id, payload));
+                    segments.get(sequence).add(id);
+                    Location old = pending.put(id, new Location(sequence, position, length));
+                    if (old != null) {
+                        // entry relocated by compaction before crash
+                        segments.get(old.sequence).remove(id);
+                    }
+                } else {
+                    entries.remove(id);
+                    Location location = pending.remove(id);
+                    if (location != null) {
+                        segments.get(location.sequence).remove(id);
+                    }
+                }
+            }
+        }
+        recovered = new ArrayList<>(entries.values());
+        // ids of parked entries aren't in segments anymore, but must not be reused
+        nextEntryId = Math.max(nextEntryId, nextParkedEntryId());
+        // never append after possibly torn tail, start new segment instead
+        segmentSequence = lastSequence;
+        rollover(segmentSize);
+        log.info("Opened spool {} with {} pending entries", directory, recovered.size());
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                directory,
+                SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX
+        )) {
+            for (Path path : stream) {
+                String name = String.valueOf(path.getFileName());
+                result.add(Long.parseLong(name.substring(
+                        SEGMENT_FILE_PREFIX.length(),
+                        name.length() - SEGMENT_FILE_SUFFIX.length()
+                )));
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Id following the largest id of parked entries.
+     *
+     * @return {@code 0} if there are no parked entries
+     */
+    private long nextParkedEntryId() throws IOException {
+        Path parkedDirectory = directory.resolve(PARKED_DIRECTORY);
+        if (!Files.isDirectory(parkedDirectory)) {
+            return 0;
+        }
+        long result = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(parkedDirectory, "*" + PARKED_FILE_SUFFIX)) {
+            for (Path path : stream) {
+                String name = String.valueOf(path.getFileName());
+                try {
+                    result = Math.max(result, Long.parseLong(name.substring(
+                            0,
+                            name.length() - PARKED_FILE_SUFFIX.length()
+                    )) + 1);
+                } catch (NumberFormatException e) {
+                    log.debug("Skip foreign file of parked directory: {}", path);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_FILE_PREFIX, sequence, SEGMENT_FILE_SUFFIX));
+    }
+
+    private static long checksum(byte type, long id, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        for (int i = 56; i >= 0; i -= 8) {
+            crc.update((int) (id >>> i));
+        }
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    private Path parkedPath(long id) {
+        return directory.resolve(PARKED_DIRECTORY).resolve(id + PARKED_FILE_SUFFIX);
+    }
+
+    /**
+     * Start new segment of specified size, at least of configured segment size.
+     */
+    private void rollover(int size) throws IOException {
+        if (segment != null) {
+            unsyncedSegments.add(segment);
+        }
+        segmentSequence++;
+        try (FileChannel channel = FileChannel.open(
+                segmentPath(segmentSequence),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        )) {
+            // mapping stays valid after channel closed
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, segmentSize));
+        }
+        segments.put(segmentSequence, new HashSet<>());
+        compact();
+    }
+
+    /**
+     * Write record to current segment.
+     *
+     * @return position of record in current segment
+     */
+    private int write(byte type, long id, byte[] payload) throws IOException {
+        if (closed) {
+            throw new IOException("Spool closed: " + directory);
+        }
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (size < 0) {
+            throw new IOException("Spool entry is too large: " + payload.length);
+        }
+        if (segment.remaining() < size) {
+            rollover(size);
+        }
+        int position = segment.position();
+        segment.put(type)
+                .putLong(id)
+                .putInt(payload.length)
+                .putLong(checksum(type, id, payload))
+                .put(payload);
+        writeCount++;
+        return position;
+    }
+
+    private void addPending(long id, int position, int length) {
+        pending.put(id, new Location(segmentSequence, position, length));
+        segments.get(segmentSequence).add(id);
+    }
+
+    private byte[] readPayload(Location location) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        try (FileChannel channel = FileChannel.open(segmentPath(location.sequence), StandardOpenOption.READ)) {
+            long position = location.position + RECORD_HEADER_SIZE;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of spool segment: " + location.sequence);
+                }
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Durably append message entry. Entry stays pending until {@link #complete(long)} invoked.
+     *
+     * @return entry id
+     */
+    public long append(byte[] payload) throws IOException {
+        long id;
+        long count;
+        synchronized (this) {
+            id = nextEntryId++;
+            addPending(id, write(ENTRY_RECORD, id, payload), payload.length);
+            count = writeCount;
+        }
+        sync(count);
+        return id;
+    }
+
+    /**
+     * Mark entry as processed, so it isn't recovered anymore.
+     */
+    public synchronized void complete(long id) throws IOException {
+        Location location = pending.remove(id);
+        if (location != null) {
+            segments.get(location.sequence).remove(id);
+            write(COMPLETE_RECORD, id, new byte[0]);
+        }
+    }
+
+    /**
+     * Move entry, that can't be processed, to {@code parked} subdirectory for manual inspection and complete it,
+     * so it neither is recovered nor holds spool segments anymore. Parked entries are never overwritten.
+     */
+    public synchronized void park(long id) throws IOException {
+        Location location = pending.get(id);
+        if (location != null) {
+            Path path = parkedPath(id);
+            Files.createDirectories(path.getParent());
+            byte[] payload = readPayload(location);
+            try {
+                Files.write(path, payload, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                // parked before crash, but its completion marker wasn't written
+                if (!Arrays.equals(payload, Files.readAllBytes(path))) {
+                    throw e;
+                }
+            }
+            log.warn("Parked spool entry {} to: {}", id, path);
+            complete(id);
+        }
+    }
+
+    /**
+     * Take entries that were pending on spool open. Entries are returned once, so spool can be shared by
+     * several lambda instances. Recovered entries stay pending until completed.
+     */
+    public synchronized List<Entry> recover() {
+        List<Entry> result = recovered;
+        recovered = Collections.emptyList();
+        return result;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Force records written before specified write count, unless they are forced by concurrent call already.
+     */
+    private void sync(long count) {
+        synchronized (syncLock) {
+            if (syncedCount >= count) {
+                return;
+            }
+            List<MappedByteBuffer> buffers;
+            long target;
+            synchronized (this) {
+                buffers = new ArrayList<>(unsyncedSegments);
+                unsyncedSegments.clear();
+                buffers.add(segment);
+                target = writeCount;
+            }
+            for (MappedByteBuffer buffer : buffers) {
+                buffer.force();
+            }
+            syncedCount = target;
+        }
+    }
+
+    /**
+     * Delete leading segments without pending entries. Current segment is never deleted. Segments are deleted
+     * in order only, as completion markers of entries are written to the same or later segments.
+     * <p>
+     * If leading segment holds later ones only by few pending entries, they are relocated to current segment
+     * first. Relocated entries keep their ids, so recovery picks the latest copy of entry.
+     */
+    public synchronized void compact() throws IOException {
+        if (compacting) {
+            // relocation rolled current segment over
+            return;
+        }
+        compacting = true;
+        try {
+            while (segments.size() > 1) {
+                Map.Entry<Long, Set<Long>> first = segments.firstEntry();
+                if (first.getKey() == segmentSequence) {
+                    break;
+                }
+                if (!first.getValue().isEmpty()) {
+                    // no later segment to release if the next one is current
+                    if (segments.size() <= 2 || !relocate(first.getKey(), first.getValue())) {
+                        break;
+                    }
+                }
+                Files.deleteIfExists(segmentPath(first.getKey()));
+                segments.remove(first.getKey());
+                log.debug("Deleted completed spool segment: {}", first.getKey());
+            }
+        } finally {
+            compacting = false;
+        }
+    }
+
+    /**
+     * Append pending entries of specified segment again to current segment and force them.
+     *
+     * @return {@code false} if pending entries are too large to be relocated
+     */
+    private boolean relocate(long sequence, Set<Long> ids) throws IOException {
+        long pendingSize = 0;
+        for (Long id : ids) {
+            pendingSize += RECORD_HEADER_SIZE + pending.get(id).length;
+        }
+        if (pendingSize >= segmentSize / RELOCATION_SEGMENT_FRACTION) {
+            return false;
+        }
+        for (Long id : new ArrayList<>(ids)) {
+            byte[] payload = readPayload(pending.get(id));
+            int position = write(ENTRY_RECORD, id, payload);
+            ids.remove(id);
+            addPending(id, position, payload.length);
+        }
+        // relocated entries have to be durable before original segment deleted
+        for (MappedByteBuffer buffer : unsyncedSegments) {
+            buffer.force();
+        }
+        segment.force();
+        log.debug("Relocated {} bytes of pending entries of spool segment: {}", pendingSize, sequence);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        long count;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            count = writeCount;
+        }
+        sync(count);
+    }
+
+    @AllArgsConstructor
+    private static class Location {
+        private final long sequence;
+        private final int position;
+        private final int length;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final long id;
+        private final byte[] payload;
+    }
+}
@@ -0,0 +1,59 @@
+package io.electrica.pipeline.java8.spi;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Error log that writes at most specified number of records per interval, so error storm, e.g. during upstream
+ * outage, doesn't slow message handling down. Number of suppressed records is reported by first record of next
+ * interval.
+ * <p>
+ * Lambda should use own instance, so errors of one lambda don't suppress errors of another one.
+ */
+public class RateLimitedLog {
+
+    private final Logger logger;
+    private final int maxRecords;
+    private final long intervalNanos;
+
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger records = new AtomicInteger();
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    public RateLimitedLog(Logger logger, int maxRecords, long interval, TimeUnit unit) {
+        if (maxRecords <= 0) {
+            throw new IllegalArgumentException("Max records per interval must be positive: " + maxRecords);
+        }
+        this.logger = logger;
+        this.maxRecords = maxRecords;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Log error with parameterized message, if limit of current interval isn't exceeded. Throwable, if any, should
+     * be last argument.
+     */
+    public void error(String format, Object... arguments) {
+        if (!logger.isErrorEnabled()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long start = intervalStart.get();
+        if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now)) {
+            records.set(0);
+            int count = suppressed.getAndSet(0);
+            if (count > 0) {
+                logger.error("Suppressed {} error record(s) during last {} ms", count,
+                        TimeUnit.NANOSECONDS.toMillis(now - start));
+            }
+        }
+        if (records.incrementAndGet() <= maxRecords) {
+            logger.error(format, arguments);
+        } else {
+            suppressed.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.Electrica;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loop lambda, that times iterations by launcher-wide scheduler provided by {@link LambdaContext#getScheduler()}
+ * instead of sleeping in own thread, as {@link LoopBackgroundProcessLambda} does. As {@link AsyncLambda} it doesn't
+ * occupy launcher thread between iterations.
+ * <p>
+ * Iterations aren't executed by shared scheduler threads, but by lambda thread created by
+ * {@link LambdaContext#getThreadFactoryProvider()} with lambda class loader as context class loader. Lambda thread
+ * is released between iterations, unless they follow each other within few seconds.
+ * <p>
+ * First iteration starts with random delay within interval, so loops of many lambdas don't fire in lockstep.
+ * Failed iterations are retried with exponential backoff limited by {@link #getMaxBackoff()}.
+ */
+@Slf4j
+public abstract class ScheduledLoopBackgroundProcessLambda extends BackgroundProcessLambda implements AsyncLambda {
+
+    private static final long DEFAULT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final long DEFAULT_MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+    private static final int MAX_BACKOFF_EXPONENT = 20;
+    private static final long LOOP_THREAD_KEEP_ALIVE = TimeUnit.SECONDS.toMillis(10);
+
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private ThreadPoolExecutor loopExecutor;
+
+    // guarded by this
+    private boolean stopped;
+    private boolean running;
+    private ScheduledFuture<?> nextIteration;
+
+    // accessed by iterations only, that are ordered by scheduling
+    private long plannedStart;
+    private int failures;
+
+    /**
+     * Specify interval for the loop.
+     *
+     * @return interval in millis
+     */
+    protected long getInterval() {
+        return DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Specify how interval is applied.
+     */
+    protected Schedule getSchedule() {
+        return Schedule.FIXED_DELAY;
+    }
+
+    /**
+     * Specify upper limit of retry delay after failed iterations.
+     *
+     * @return max backoff in millis
+     */
+    protected long getMaxBackoff() {
+        return DEFAULT_MAX_BACKOFF;
+    }
+
+    /**
+     * Execute operation in loop according to {@link #getSchedule()}.
+     *
+     * @return {@code true} to continue loop, otherwise {@code false}
+     */
+    protected abstract boolean doInLoop() throws Exception;
+
+    @Override
+    public void initialize(Electrica electrica) throws Exception {
+        super.initialize(electrica);
+        ThreadFactory threadFactory = getContext().getThreadFactoryProvider().newThreadFactory(getName() + "-loop-");
+        ClassLoader classLoader = getClass().getClassLoader();
+        loopExecutor = new ThreadPoolExecutor(
+                1,
+                1,
+                LOOP_THREAD_KEEP_ALIVE,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                task -> {
+                    Thread thread = threadFactory.newThread(task);
+                    // lambda libraries may look up classes and resources by context class loader
+                    thread.setContextClassLoader(classLoader);
+                    return thread;
+                }
+        );
+        loopExecutor.allowCoreThreadTimeOut(true);
+        long interval = getInterval();
+        long jitter = interval > 0 ? ThreadLocalRandom.current().nextLong(interval) : 0;
+        plannedStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jitter);
+        synchronized (this) {
+            scheduleOrFinish(jitter);
+        }
+    }
+
+    private void scheduleOrFinish(long delay) {
+        if (stopped) {
+            finished.complete(null);
+        } else {
+            // scheduler only times iteration, so long iterations don't hold threads shared by launcher
+            nextIteration = getContext().getScheduler().schedule(
+                    () -> loopExecutor.execute(this::runIteration),
+                    delay,
+                    TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    private void runIteration() {
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            running = true;
+        }
+
+        boolean proceed;
+        long delay;
+        try (MDC.MDCCloseable ignored = MDC.putCloseable("lambdaName", getName())) {
+            try {
+                proceed = doInLoop();
+                failures = 0;
+                delay = nextDelay();
+            } catch (Exception e) {
+                log.error("Unhandled in-loop job error", e);
+                proceed = true;
+                failures++;
+                delay = backoff();
+            }
+        }
+
+        synchronized (this) {
+            running = false;
+            if (!proceed) {
+                // finish main job
+                stopped = true;
+            }
+            scheduleOrFinish(delay);
+        }
+    }
+
+    private long nextDelay() {
+        long interval = getInterval();
+        if (getSchedule() == Schedule.FIXED_DELAY) {
+            return interval;
+        }
+        long now = System.nanoTime();
+        plannedStart += TimeUnit.MILLISECONDS.toNanos(interval);
+        if (plannedStart < now) {
+            // iteration took longer than interval, start next one immediately without catching up
+            plannedStart = now;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(plannedStart - now);
+    }
+
+    private long backoff() {
+        long interval = Math.max(getInterval(), 1);
+        long backoff = interval << Math.min(failures - 1, MAX_BACKOFF_EXPONENT);
+        plannedStart = System.nanoTime();
+        return Math.min(backoff, getMaxBackoff());
+    }
+
+    @Override
+    public void onStopSignal() {
+        synchronized (this) {
+            stopped = true;
+            if (nextIteration != null) {
+                nextIteration.cancel(false);
+            }
+            // otherwise iteration in progress finishes main job
+            if (!running) {
+                finished.complete(null);
+            }
+        }
+        super.onStopSignal();
+    }
+
+    @Override
+    public CompletionStage<Void> doWorkAsync(Electrica electrica) {
+        return finished.whenComplete((ignored, e) -> log.debug("Loop finished"));
+    }
+
+    @Override
+    public void doWork(Electrica electrica) throws Exception {
+        doWorkAsync(electrica).toCompletableFuture().get();
+    }
+
+    @Override
+    public void destroy(Electrica electrica) throws Exception {
+        super.destroy(electrica);
+        if (loopExecutor != null) {
+            loopExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Loop scheduling semantic.
+     */
+    public enum Schedule {
+
+        /**
+         * Iterations start each interval regardless of iteration duration. If iteration takes longer than
+         * interval, next one starts immediately.
+         */
+        FIXED_RATE,
+
+        /**
+         * Next iteration starts after interval since previous one finished.
+         */
+        FIXED_DELAY
+    }
+}
@@ -0,0 +1,17 @@
+package io.electrica.pipeline.java8.spi;
+
+/**
+ * Ownership of messages among launcher processes, that handle the same traffic. Lambda should accept only messages,
+ * which routing key, e.g. transaction id, is owned by current launcher.
+ * <p>
+ * Ownership can change over time, as launchers join and leave.
+ */
+public interface Sharding {
+
+    /**
+     * All keys are owned by single launcher.
+     */
+    Sharding SINGLE = key -> true;
+
+    boolean owns(String key);
+}
@@ -0,0 +1,127 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.Electrica;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stage of in-process pipeline, that takes elements from input channel, processes them and passes results to output
+ * channel, see {@link LambdaContext#getChannel(String, Class)}.
+ * <p>
+ * Channels declared by lambda can be rewired by {@link LambdaParameters#INPUT_CHANNEL} and
+ * {@link LambdaParameters#OUTPUT_CHANNEL} parameters. Each lambda instance consumes input channel in own thread,
+ * so stage concurrency is set by {@link LambdaParameters#CONCURRENCY} parameter. First stage is usually a message
+ * listener lambda, that puts accepted messages to channel.
+ *
+ * @param <I> input element type
+ * @param <O> output element type, {@link Void} for last stage
+ */
+@Slf4j
+public abstract class StageLambda<I, O> extends BackgroundProcessLambda {
+
+    private static final long POLL_TIMEOUT = 100;
+    private static final int MAX_ERROR_RECORDS_PER_MINUTE = 10;
+
+    private final RateLimitedLog errorLog = new RateLimitedLog(log, MAX_ERROR_RECORDS_PER_MINUTE, 1, TimeUnit.MINUTES);
+
+    private final String inputChannelName;
+    private final Class<I> inputType;
+    @Nullable
+    private final String outputChannelName;
+    @Nullable
+    private final Class<O> outputType;
+
+    private volatile boolean stopped;
+    private Channel<I> input;
+    @Nullable
+    private Channel<O> output;
+
+    /**
+     * Stage with output channel.
+     */
+    protected StageLambda(String inputChannel, Class<I> inputType, String outputChannel, Class<O> outputType) {
+        this.inputChannelName = inputChannel;
+        this.inputType = inputType;
+        this.outputChannelName = outputChannel;
+        this.outputType = outputType;
+    }
+
+    /**
+     * Last stage without output channel.
+     */
+    protected StageLambda(String inputChannel, Class<I> inputType) {
+        this.inputChannelName = inputChannel;
+        this.inputType = inputType;
+        this.outputChannelName = null;
+        this.outputType = null;
+    }
+
+    /**
+     * Process input element.
+     *
+     * @return output element or {@code null} to pass nothing to output channel
+     */
+    @Nullable
+    protected abstract O process(I element) throws Exception;
+
+    @Override
+    public void initialize(Electrica electrica) throws Exception {
+        super.initialize(electrica);
+        LambdaContext context = getContext();
+        LambdaParameters parameters = context.getParameters();
+        input = context.getChannel(parameters.getString(LambdaParameters.INPUT_CHANNEL, inputChannelName), inputType);
+        if (outputType != null) {
+            String name = parameters.getString(LambdaParameters.OUTPUT_CHANNEL, outputChannelName);
+            output = context.getChannel(name, outputType);
+        }
+    }
+
+    @Override
+    public void onStopSignal() {
+        stopped = true;
+        super.onStopSignal();
+    }
+
+    @Override
+    public void doWork(Electrica electrica) throws Exception {
+        while (!stopped) {
+            I element = input.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            if (element != null) {
+                O result = handle(element);
+                if (result != null && output != null) {
+                    emit(result);
+                }
+            }
+        }
+    }
+
+    @Nullable
+    private O handle(I element) {
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            O result = process(element);
+            success = true;
+            return result;
+        } catch (Exception e) {
+            errorLog.error("Error processing element of channel: {}", input.getName(), e);
+            return null;
+        } finally {
+            getContext().getMetrics().record("process", System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Wait for free space of output channel, so slow next stage throttles this one, but don't hang on stop.
+     */
+    private void emit(O result) throws InterruptedException {
+        while (!output.offer(result, POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (stopped) {
+                log.warn("Output channel {} is full on stop, element dropped", output.getName());
+                return;
+            }
+        }
+    }
+}
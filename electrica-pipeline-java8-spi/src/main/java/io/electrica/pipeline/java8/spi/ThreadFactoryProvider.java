@@ -0,0 +1,25 @@
+package io.electrica.pipeline.java8.spi;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Provider of threads that run lambdas and lambda owned tasks. Implementations are discovered by
+ * {@link java.util.ServiceLoader} from launcher classpath and selected by name with launcher option.
+ */
+public interface ThreadFactoryProvider {
+
+    /**
+     * Unique provider name, e.g. {@code platform}.
+     */
+    String getName();
+
+    /**
+     * Check if provider can create threads on current JVM.
+     */
+    boolean isAvailable();
+
+    /**
+     * Create factory of daemon threads named by specified prefix followed by sequence number.
+     */
+    ThreadFactory newThreadFactory(String namePrefix);
+}
@@ -0,0 +1,110 @@
+package io.electrica.pipeline.java8.spi;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Start time of call, that took specified latency by the moment of completion.
+     */
+    private static long startedAgo(long latency) {
+        return System.nanoTime() - latency;
+    }
+
+    @Test
+    void wrongLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 2, 4));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(8, 1, 4));
+    }
+
+    @Test
+    void droppedCallsReduceLimitDownToMin() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 10);
+        limiter.onDropped(limiter.acquire());
+        assertEquals(9, limiter.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limiter.onDropped(limiter.acquire());
+        }
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void utilizedLimitGrowsUpToMax() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8);
+        for (int round = 0; round < 100; round++) {
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++) {
+                limiter.acquire();
+            }
+            assertEquals(limit, limiter.getInFlight());
+            for (int i = 0; i < limit; i++) {
+                limiter.onSuccess(startedAgo(LATENCY));
+            }
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void underutilizedLimitDoesNotGrow() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire();
+            limiter.onSuccess(startedAgo(LATENCY));
+        }
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void risingLatencyReducesLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10);
+        limiter.acquire();
+        limiter.onSuccess(startedAgo(LATENCY));
+        assertEquals(10, limiter.getLimit());
+        limiter.acquire();
+        limiter.onSuccess(startedAgo(LATENCY * 10));
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    void ignoredCallsDoNotChangeLimit() throws InterruptedException {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 8);
+        for (int i = 0; i < 100; i++) {
+            limiter.onIgnore(limiter.acquire());
+        }
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void acquireWaitsForFreeSlot() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        long start = limiter.acquire();
+        CountDownLatch waiting = new CountDownLatch(1);
+        CompletableFuture<Long> next = CompletableFuture.supplyAsync(() -> {
+            waiting.countDown();
+            try {
+                return limiter.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(waiting.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        Thread.sleep(50);
+        assertFalse(next.isDone());
+
+        limiter.onIgnore(start);
+        limiter.onIgnore(next.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, limiter.getInFlight());
+    }
+}
@@ -0,0 +1,183 @@
+package io.electrica.pipeline.java8.spi;
+
+import io.electrica.sdk.java8.api.MessageListener;
+import io.electrica.sdk.java8.api.http.Message;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class BoundedMessageListenerTest {
+
+    private static final String PROCESSED = "processed";
+    private static final String REJECTED = "rejected";
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+
+    private final Message message = mock(Message.class);
+    private final MessageListener rejectionListener = message -> REJECTED;
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    // holds message in flight until released
+    private final MessageListener blockingListener = message -> {
+        entered.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return PROCESSED;
+    };
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    private Future<String> holdInFlight(BoundedMessageListener listener) throws InterruptedException {
+        Future<String> result = executor.submit(() -> listener.onMessage(message));
+        assertTrue(entered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        return result;
+    }
+
+    private static void awaitWaiting(BoundedMessageListener listener, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+        while (listener.getWaiting() < waiting) {
+            assertTrue(System.nanoTime() < deadline, "Messages don't wait");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void wrongLimitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new BoundedMessageListener(message -> PROCESSED, rejectionListener, 0, 0, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () ->
+                new BoundedMessageListener(message -> PROCESSED, rejectionListener, 1, -1, 0, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalArgumentException.class, () ->
+                new BoundedMessageListener(message -> PROCESSED, rejectionListener, 1, 0, -1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void messagesWithinLimitAreProcessed() {
+        BoundedMessageListener listener =
+                new BoundedMessageListener(message -> PROCESSED, rejectionListener, 1, 0, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(PROCESSED, listener.onMessage(message));
+        }
+        assertEquals(0, listener.getInFlight());
+    }
+
+    @Test
+    void messageOverInFlightLimitIsRejectedWithoutWaiting() throws Exception {
+        BoundedMessageListener listener =
+                new BoundedMessageListener(blockingListener, rejectionListener, 1, 0, 0, TimeUnit.MILLISECONDS);
+        Future<String> inFlight = holdInFlight(listener);
+        assertEquals(1, listener.getInFlight());
+        assertEquals(REJECTED, listener.onMessage(message));
+
+        release.countDown();
+        assertEquals(PROCESSED, inFlight.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, listener.getInFlight());
+    }
+
+    @Test
+    void waitingMessageIsProcessedOnceSlotIsFree() throws Exception {
+        BoundedMessageListener listener = new BoundedMessageListener(
+                blockingListener,
+                rejectionListener,
+                1,
+                1,
+                TIMEOUT,
+                TimeUnit.MILLISECONDS
+        );
+        Future<String> inFlight = holdInFlight(listener);
+        Future<String> waiting = executor.submit(() -> listener.onMessage(message));
+        awaitWaiting(listener, 1);
+
+        release.countDown();
+        assertEquals(PROCESSED, inFlight.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(PROCESSED, waiting.get(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, listener.getWaiting());
+    }
+
+    @Test
+    void messageOverWaitingLimitIsRejected() throws Exception {
+        BoundedMessageListener listener = new BoundedMessageListener(
+                blockingListener,
+                rejectionListener,
+                1,
+                1,
+                TIMEOUT,
+                TimeUnit.MILLISECONDS
+        );
+        holdInFlight(listener);
+        executor.submit(() -> listener.onMessage(message));
+        awaitWaiting(listener, 1);
+
+        assertEquals(REJECTED, listener.onMessage(message));
+        assertEquals(1, listener.getWaiting());
+    }
+
+    @Test
+    void messageIsRejectedAfterWaitTimeout() throws Exception {
+        BoundedMessageListener listener =
+                new BoundedMessageListener(blockingListener, rejectionListener, 1, 1, 10, TimeUnit.MILLISECONDS);
+        holdInFlight(listener);
+        assertEquals(REJECTED, listener.onMessage(message));
+        assertEquals(0, listener.getWaiting());
+    }
+
+    @Test
+    void interruptedWaitingMessageIsRejected() throws Exception {
+        BoundedMessageListener listener = new BoundedMessageListener(
+                blockingListener,
+                rejectionListener,
+                1,
+                1,
+                TIMEOUT,
+                TimeUnit.MILLISECONDS
+        );
+        holdInFlight(listener);
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(REJECTED, listener.onMessage(message));
+            // interrupt status is restored for caller
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void allMessagesAreRejectedWhileOverloaded() {
+        boolean[] overloaded = {true};
+        BoundedMessageListener listener = new BoundedMessageListener(
+                message -> PROCESSED,
+                rejectionListener,
+                1,
+                0,
+                0,
+                TimeUnit.MILLISECONDS,
+                () -> overloaded[0]
+        );
+        assertEquals(REJECTED, listener.onMessage(message));
+        overloaded[0] = false;
+        assertEquals(PROCESSED, listener.onMessage(message));
+    }
+}
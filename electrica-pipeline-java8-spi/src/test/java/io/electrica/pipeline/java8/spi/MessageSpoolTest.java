@@ -0,0 +1,218 @@
+package io.electrica.pipeline.java8.spi;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageSpoolTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+    // type, entry id, payload length, checksum
+    private static final int RECORD_HEADER_SIZE = 1 + 8 + 4 + 8;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        directory = Files.createTempDirectory("spool");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static byte[] payload(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> payloads(List<MessageSpool.Entry> entries) {
+        return entries.stream()
+                .map(entry -> new String(entry.getPayload(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.spool")) {
+            stream.forEach(result::add);
+        }
+        result.sort(Comparator.naturalOrder());
+        return result;
+    }
+
+    @Test
+    void pendingEntriesAreRecoveredOnReopen() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        long first = spool.append(payload("first"));
+        long second = spool.append(payload("second"));
+        long third = spool.append(payload("third"));
+        spool.complete(second);
+        assertEquals(2, spool.getPendingCount());
+        spool.close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recovered = reopened.recover();
+        assertEquals(first, recovered.get(0).getId());
+        assertEquals(third, recovered.get(1).getId());
+        assertEquals(2, recovered.size());
+        assertEquals(2, reopened.getPendingCount());
+        // recovered entries are taken once
+        assertTrue(reopened.recover().isEmpty());
+
+        // new entries don't reuse ids of recovered ones
+        assertTrue(reopened.append(payload("fourth")) > third);
+        reopened.close();
+    }
+
+    @Test
+    void recoveredEntriesStayPendingUntilCompleted() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        spool.append(payload("first"));
+        long second = spool.append(payload("second"));
+        spool.close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        reopened.complete(reopened.recover().get(0).getId());
+        reopened.close();
+
+        MessageSpool again = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recovered = again.recover();
+        assertEquals(1, recovered.size());
+        assertEquals(second, recovered.get(0).getId());
+        assertEquals("second", payloads(recovered).get(0));
+        again.close();
+    }
+
+    @Test
+    void completedSegmentsAreDeleted() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 100; i++) {
+            spool.complete(spool.append(payload));
+        }
+        assertTrue(segments().size() <= 2, "Segments left: " + segments());
+        assertEquals(0, spool.getPendingCount());
+        spool.close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        assertTrue(reopened.recover().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void stuckEntryIsRelocatedAndDoesNotHoldLaterSegments() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        long stuck = spool.append(payload("stuck"));
+        byte[] payload = new byte[100];
+        for (int i = 0; i < 200; i++) {
+            spool.complete(spool.append(payload));
+        }
+        assertTrue(segments().size() <= 3, "Segments left: " + segments());
+        spool.close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recovered = reopened.recover();
+        assertEquals(1, recovered.size());
+        assertEquals(stuck, recovered.get(0).getId());
+        assertEquals("stuck", payloads(recovered).get(0));
+        reopened.close();
+    }
+
+    @Test
+    void entryLargerThanSegmentIsAppended() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        byte[] large = new byte[SEGMENT_SIZE * 3];
+        large[large.length - 1] = 42;
+        long largeId = spool.append(large);
+        long smallId = spool.append(payload("small"));
+        spool.close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recovered = reopened.recover();
+        assertEquals(2, recovered.size());
+        assertEquals(largeId, recovered.get(0).getId());
+        assertArrayEquals(large, recovered.get(0).getPayload());
+        assertEquals(smallId, recovered.get(1).getId());
+        reopened.close();
+    }
+
+    @Test
+    void parkedEntryIsMovedOutOfSpool() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        long id = spool.append(payload("poison"));
+        spool.park(id);
+        assertEquals(0, spool.getPendingCount());
+        spool.close();
+
+        assertArrayEquals(payload("poison"), Files.readAllBytes(directory.resolve("parked").resolve(id + ".entry")));
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        assertTrue(reopened.recover().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void parkedEntryIdsAreNotReusedAfterSegmentsDeleted() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        long first = spool.append(payload("first"));
+        spool.park(first);
+        spool.close();
+        // segment of parked entry is deleted on reopen, so the next open sees no entry ids in segments
+        MessageSpool.open(directory, SEGMENT_SIZE).close();
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        long second = reopened.append(payload("second"));
+        reopened.park(second);
+        reopened.close();
+        assertNotEquals(first, second);
+        Path parked = directory.resolve("parked");
+        assertArrayEquals(payload("first"), Files.readAllBytes(parked.resolve(first + ".entry")));
+        assertArrayEquals(payload("second"), Files.readAllBytes(parked.resolve(second + ".entry")));
+    }
+
+    @Test
+    void corruptedTailIsSkipped() throws IOException {
+        MessageSpool spool = MessageSpool.open(directory, SEGMENT_SIZE);
+        long first = spool.append(payload("first"));
+        spool.append(payload("second"));
+        spool.close();
+
+        // flip payload byte of the second record, as if it was torn by crash
+        Path segment = segments().get(0);
+        byte[] content = Files.readAllBytes(segment);
+        content[RECORD_HEADER_SIZE + "first".length() + RECORD_HEADER_SIZE] ^= 1;
+        Files.write(segment, content);
+
+        MessageSpool reopened = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recovered = reopened.recover();
+        assertEquals(1, recovered.size());
+        assertEquals(first, recovered.get(0).getId());
+        // spool keeps appending after torn tail
+        long next = reopened.append(payload("next"));
+        reopened.close();
+
+        MessageSpool again = MessageSpool.open(directory, SEGMENT_SIZE);
+        List<MessageSpool.Entry> recoveredAgain = again.recover();
+        assertEquals(2, recoveredAgain.size());
+        assertEquals(first, recoveredAgain.get(0).getId());
+        assertEquals(next, recoveredAgain.get(1).getId());
+        again.close();
+    }
+}